@@ -0,0 +1,96 @@
+package com.jeff.dsource.rxrequest;
+
+import android.support.annotation.NonNull;
+
+import com.jeff.dsource.rxrequest.util.PriorityScheduler;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.functions.Action;
+
+/**
+ * 进行中请求的合并，同一个key的并发订阅共享一次上游(memory>disk>network)
+ * <p>
+ * 后加入的订阅者会收到已发射的全部数据，所有订阅者得到同样的结果或错误。
+ * 上游结束或全部订阅者取消后移除，之后的订阅重新请求。
+ * <p>
+ * 上游在发起它的订阅所在的线程执行，只加入优先级不低于自己的请求，
+ * 高优先级的请求不会等待低优先级线程上的上游，见{@link PriorityScheduler}
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class InFlightRequests {
+    private final ConcurrentHashMap<String, Observable<?>> mRequests = new ConcurrentHashMap<>();
+    private final AtomicLong mDeduplicated = new AtomicLong();
+
+    /**
+     * 订阅时若同一个key、优先级不低于priority的请求正在进行则加入它，否则发起上游
+     *
+     * @param key      请求的key，同一个key的数据类型必须相同
+     * @param priority 请求的优先级
+     * @param upstream 上游
+     * @param <T>
+     * @return
+     */
+    <T> Observable<T> share(@NonNull final String key,
+                            @PriorityScheduler.Priority final int priority,
+                            @NonNull final Observable<T> upstream) {
+        return Observable.defer(new Callable<ObservableSource<T>>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public ObservableSource<T> call() throws Exception {
+                for (int higher = PriorityScheduler.Priority.CRITICAL; higher < priority; higher++) {
+                    Observable<?> running = mRequests.get(flightKey(key, higher));
+                    if (running != null) {
+                        mDeduplicated.incrementAndGet();
+                        return (Observable<T>) running;
+                    }
+                }
+                Flight<T> flight = new Flight<>(flightKey(key, priority), upstream);
+                Observable<?> running = mRequests.putIfAbsent(flight.key, flight.shared);
+                if (running != null) {
+                    mDeduplicated.incrementAndGet();
+                    return (Observable<T>) running;
+                }
+                return flight.shared;
+            }
+        });
+    }
+
+    /**
+     * 被合并的订阅数
+     *
+     * @return
+     */
+    long getDeduplicatedCount() {
+        return mDeduplicated.get();
+    }
+
+    private static String flightKey(String key, int priority) {
+        return priority + ":" + key;
+    }
+
+    private final class Flight<T> implements Action {
+        private final String key;
+        private final Observable<T> shared;
+
+        Flight(final String key, final Observable<T> upstream) {
+            this.key = key;
+            // replay让后加入的订阅者也能收到已发射的数据
+            this.shared = upstream.doFinally(this).replay().refCount();
+        }
+
+        @Override
+        public void run() throws Exception {
+            mRequests.remove(key, shared);
+        }
+    }
+}
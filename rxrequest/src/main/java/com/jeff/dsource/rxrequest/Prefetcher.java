@@ -0,0 +1,315 @@
+package com.jeff.dsource.rxrequest;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.jeff.dsource.rxrequest.util.PriorityScheduler;
+import com.jeff.jframework.tools.NetworkUtils;
+import com.jeff.jframework.tools.StringUtils;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+
+/**
+ * 空闲时预加载，提前把用户可能打开的内容写入缓存
+ * <p>
+ * 预加载只在主线程空闲、没有前台请求且网络不计流量时逐个执行，结果按{@link RxRequest.Cache}
+ * 的缓存模式直接写入缓存，不回调{@link RxRequest.OnResultListener}。前台请求开始时取消进行中的
+ * 预加载并放回队列，等下次空闲再执行。每小时的预加载有字节数和耗时预算，用完后等下一个小时。
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public final class Prefetcher {
+    private static final String TAG = "Prefetcher";
+    private static final long BUDGET_WINDOW_MS = 60 * 60 * 1000L;
+    private static final long DEFAULT_MAX_BYTES = 4 * 1024 * 1024L;
+    private static final long DEFAULT_MAX_TIME_MS = 60 * 1000L;
+    /**
+     * 前台请求结束后，等待这么久没有新的前台请求才算空闲
+     */
+    private static final long QUIET_PERIOD_MS = 3000L;
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * 等待中的预加载，按缓存key去重，guarded by this
+     */
+    private final LinkedHashMap<String, RxRequest.Builder<?>> mPending = new LinkedHashMap<>();
+    private RxRequest.Builder<?> mRunning;
+    private Disposable mRunningRequest;
+    private long mRunningSince;
+    private int mForegroundRequests;
+    private long mLastForegroundTime;
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    private long mMaxTimeMs = DEFAULT_MAX_TIME_MS;
+    private long mWindowStart = -BUDGET_WINDOW_MS;
+    private long mBytesUsed;
+    private long mTimeUsedMs;
+    private boolean mIdleHandlerAdded;
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            synchronized (Prefetcher.this) {
+                if (mPending.isEmpty()) {
+                    mIdleHandlerAdded = false;
+                    return false;
+                }
+            }
+            tryStart();
+            return true;
+        }
+    };
+    /**
+     * 在主线程注册空闲检查，这条消息处理完后主线程再次空闲，也会触发检查
+     */
+    private final Runnable mCheckIdle = new Runnable() {
+        @Override
+        public void run() {
+            addIdleHandler();
+        }
+    };
+
+    private static final class Holder {
+        private static final Prefetcher INSTANCE = new Prefetcher();
+    }
+
+    public static Prefetcher getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private Prefetcher() {
+    }
+
+    /**
+     * 添加预加载，同一个缓存key只保留最后添加的。没有缓存key、不缓存或没有网络请求的会被忽略
+     *
+     * @param builders
+     */
+    public void prefetch(@NonNull Collection<? extends RxRequest.Builder<?>> builders) {
+        synchronized (this) {
+            for (RxRequest.Builder<?> builder : builders) {
+                RxRequest.Cache<?> cache = builder.getCache();
+                if (StringUtils.isEmpty(cache.key) || cache.cacheMode == RxRequest.Mode.MODE_NONE_CACHE
+                        || builder.getNetworkObservable() == null) {
+                    Log.w(TAG, String.format("#prefetch tag:[%s] ignored, nothing to cache", cache.key));
+                    continue;
+                }
+                mPending.remove(cache.key);
+                mPending.put(cache.key, builder);
+            }
+        }
+        mMainHandler.post(mCheckIdle);
+    }
+
+    /**
+     * 设置每小时的预算，用完后预加载暂停到下一个小时，默认4MB、60秒
+     *
+     * @param maxBytes 写入缓存的最大字节数，按编码后的大小计算
+     * @param maxTime  预加载的最长耗时
+     * @param unit     maxTime的单位
+     */
+    public synchronized void setBudget(long maxBytes, long maxTime, @NonNull TimeUnit unit) {
+        mMaxBytes = maxBytes;
+        mMaxTimeMs = unit.toMillis(maxTime);
+    }
+
+    /**
+     * 取消全部预加载
+     */
+    public void cancelAll() {
+        synchronized (this) {
+            mPending.clear();
+        }
+        cancelRunning(false);
+    }
+
+    /**
+     * 获取等待中的预加载数
+     *
+     * @return
+     */
+    public synchronized int getPendingCount() {
+        return mPending.size();
+    }
+
+    /**
+     * 标记前台请求：订阅时取消进行中的预加载，结束后重新计算空闲
+     */
+    <T> Observable<T> foreground(Observable<T> request) {
+        return request.doOnSubscribe(new Consumer<Disposable>() {
+            @Override
+            public void accept(Disposable disposable) throws Exception {
+                synchronized (Prefetcher.this) {
+                    mForegroundRequests++;
+                    mLastForegroundTime = SystemClock.elapsedRealtime();
+                }
+                cancelRunning(true);
+            }
+        }).doFinally(new Action() {
+            @Override
+            public void run() throws Exception {
+                synchronized (Prefetcher.this) {
+                    mForegroundRequests--;
+                    mLastForegroundTime = SystemClock.elapsedRealtime();
+                    if (mPending.isEmpty()) {
+                        return;
+                    }
+                }
+                mMainHandler.removeCallbacks(mCheckIdle);
+                mMainHandler.postDelayed(mCheckIdle, QUIET_PERIOD_MS);
+            }
+        });
+    }
+
+    private void addIdleHandler() {
+        synchronized (this) {
+            if (mIdleHandlerAdded || mPending.isEmpty()) {
+                return;
+            }
+            mIdleHandlerAdded = true;
+        }
+        Looper.myQueue().addIdleHandler(mIdleHandler);
+    }
+
+    /**
+     * 在主线程空闲时调用
+     */
+    private void tryStart() {
+        RxRequest.Builder<?> next;
+        synchronized (this) {
+            if (mRunning != null || mForegroundRequests > 0) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            long quiet = now - mLastForegroundTime;
+            if (mLastForegroundTime > 0 && quiet < QUIET_PERIOD_MS) {
+                mMainHandler.removeCallbacks(mCheckIdle);
+                mMainHandler.postDelayed(mCheckIdle, QUIET_PERIOD_MS - quiet);
+                return;
+            }
+            if (now - mWindowStart >= BUDGET_WINDOW_MS) {
+                mWindowStart = now;
+                mBytesUsed = 0;
+                mTimeUsedMs = 0;
+            }
+            if (mBytesUsed >= mMaxBytes || mTimeUsedMs >= mMaxTimeMs) {
+                mMainHandler.removeCallbacks(mCheckIdle);
+                mMainHandler.postDelayed(mCheckIdle, mWindowStart + BUDGET_WINDOW_MS - now);
+                return;
+            }
+            // 网络变化不会让主线程空闲，下次空闲时再检查
+            if (!NetworkUtils.isUnmetered()) {
+                return;
+            }
+            Iterator<RxRequest.Builder<?>> iterator = mPending.values().iterator();
+            next = iterator.next();
+            iterator.remove();
+            mRunning = next;
+            mRunningSince = now;
+        }
+        start(next);
+    }
+
+    private <T> void start(final RxRequest.Builder<T> builder) {
+        final RxRequest.Cache<T> cache = builder.getCache();
+        Log.d(TAG, String.format("#prefetch tag:[%s] start", cache.key));
+        // 结果在预加载线程写入缓存，不切回主线程
+        Disposable request = builder.getNetworkObservable()
+                .subscribeOn(PriorityScheduler.getInstance()
+                        .scheduler(PriorityScheduler.Priority.PREFETCH, this))
+                .subscribe(new Consumer<RxRequest.Item<T>>() {
+                    @Override
+                    public void accept(RxRequest.Item<T> item) throws Exception {
+                        if (item.data == null) {
+                            return;
+                        }
+                        int size = RxRequest.sizeOf(cache, item.data);
+                        RxRequest.writeCache(cache, item.data);
+                        synchronized (Prefetcher.this) {
+                            mBytesUsed += size;
+                        }
+                        Log.d(TAG, String.format("#prefetch tag:[%s] cached %d bytes", cache.key, size));
+                    }
+                }, new Consumer<Throwable>() {
+                    @Override
+                    public void accept(Throwable throwable) throws Exception {
+                        Log.w(TAG, String.format("#prefetch tag:[%s] failed: %s",
+                                cache.key, throwable.getMessage()));
+                        finish(builder);
+                    }
+                }, new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        finish(builder);
+                    }
+                });
+        synchronized (this) {
+            if (mRunning == builder) {
+                mRunningRequest = request;
+                return;
+            }
+        }
+        // 订阅前已被取消
+        request.dispose();
+    }
+
+    private void finish(RxRequest.Builder<?> builder) {
+        synchronized (this) {
+            if (mRunning != builder) {
+                return;
+            }
+            mTimeUsedMs += SystemClock.elapsedRealtime() - mRunningSince;
+            mRunning = null;
+            mRunningRequest = null;
+            if (mPending.isEmpty()) {
+                return;
+            }
+        }
+        mMainHandler.post(mCheckIdle);
+    }
+
+    /**
+     * @param requeue 是否放回队列等下次空闲再执行
+     */
+    private void cancelRunning(boolean requeue) {
+        Disposable request;
+        synchronized (this) {
+            if (mRunning == null) {
+                return;
+            }
+            String key = mRunning.getCache().key;
+            Log.d(TAG, String.format("#prefetch tag:[%s] cancelled", key));
+            if (requeue && !mPending.containsKey(key)) {
+                // 放回队首
+                LinkedHashMap<String, RxRequest.Builder<?>> pending = new LinkedHashMap<>();
+                pending.put(key, mRunning);
+                pending.putAll(mPending);
+                mPending.clear();
+                mPending.putAll(pending);
+            }
+            mTimeUsedMs += SystemClock.elapsedRealtime() - mRunningSince;
+            request = mRunningRequest;
+            mRunning = null;
+            mRunningRequest = null;
+        }
+        if (request != null) {
+            request.dispose();
+        }
+        PriorityScheduler.getInstance().cancel(this);
+    }
+}
@@ -1,7 +1,5 @@
 package com.jeff.dsource.rxrequest;
 
-import android.graphics.Bitmap;
-import android.graphics.drawable.Drawable;
 import android.os.Parcelable;
 import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
@@ -12,28 +10,41 @@ import com.jeff.dsource.rxrequest.exception.ExceptionHandler;
 import com.jeff.dsource.rxrequest.exception.ResponseException;
 import com.jeff.dsource.rxrequest.exception.ResponseUnavailableException;
 import com.jeff.dsource.rxrequest.interceptor.logging.Level;
+import com.jeff.dsource.rxrequest.util.PriorityScheduler;
 import com.jeff.dsource.rxrequest.util.RxScheduler;
 import com.jeff.jframework.tools.StringUtils;
+import com.jeff.jframework.tools.cache.AdmissionPolicy;
+import com.jeff.jframework.tools.cache.AdmissionStats;
+import com.jeff.jframework.tools.cache.CacheCodec;
+import com.jeff.jframework.tools.cache.CacheCodecs;
 import com.jeff.jframework.tools.cache.LruDiskCache;
 import com.jeff.jframework.tools.cache.LruDoubleCache;
 import com.jeff.jframework.tools.cache.LruMemoryCache;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
-import java.io.Serializable;
+import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import io.reactivex.Observable;
 import io.reactivex.ObservableEmitter;
 import io.reactivex.ObservableOnSubscribe;
+import io.reactivex.ObservableSource;
 import io.reactivex.Single;
 import io.reactivex.SingleObserver;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.functions.BiFunction;
+import io.reactivex.functions.Action;
 import io.reactivex.functions.Consumer;
 import io.reactivex.functions.Function;
+import io.reactivex.functions.Predicate;
 import io.reactivex.schedulers.Schedulers;
 
 /**
@@ -67,7 +78,7 @@ public final class RxRequest {
     }
 
     @IntDef({Mode.MODE_NONE_CACHE, Mode.MODE_MEMORY_CACHE_ONLY,
-            Mode.MODE_DISK_CACHE_ONLY, Mode.MODE_DOUBLE_CACHE})
+            Mode.MODE_DISK_CACHE_ONLY, Mode.MODE_DOUBLE_CACHE, Mode.MODE_STALE_WHILE_REVALIDATE})
     @Retention(RetentionPolicy.SOURCE)
     public @interface Mode {
         /**
@@ -86,11 +97,21 @@ public final class RxRequest {
          * 同时使用memory和磁盘缓存
          */
         int MODE_DOUBLE_CACHE = 0x008;
+        /**
+         * 先返回memory或磁盘缓存，再在后台请求网络并写回缓存，
+         * 网络数据与缓存内容不同时再回调一次，已返回缓存时后台刷新失败不回调错误
+         */
+        int MODE_STALE_WHILE_REVALIDATE = 0x009;
     }
 
     private static volatile RxRequest sInstance;
 
-    private Level mLogLevel = Level.BASIC;
+    private volatile Level mLogLevel = Level.BASIC;
+    private final InFlightRequests mInFlight = new InFlightRequests();
+    /**
+     * 按tag登记的进行中请求，用于取消
+     */
+    private final HashMap<Object, List<Disposable>> mTaggedRequests = new HashMap<>();
 
     private RxRequest() {
     }
@@ -114,142 +135,330 @@ public final class RxRequest {
         return this.mLogLevel;
     }
 
+    /**
+     * 设置磁盘缓存的准入策略，{@link Mode#MODE_DISK_CACHE_ONLY}和{@link Mode#MODE_DOUBLE_CACHE}
+     * 的网络结果都经过同一个策略，未准入的只进memory缓存（双缓存时），避免一次性的数据写入磁盘
+     *
+     * @param policy 准入策略，见{@link com.jeff.jframework.tools.cache.AdmissionPolicies}，null则全部写入
+     */
+    public void setDiskAdmissionPolicy(@Nullable AdmissionPolicy policy) {
+        LruDiskCache.getInstance().setAdmissionPolicy(policy);
+    }
+
+    /**
+     * 获取磁盘缓存准入/拒绝的次数
+     *
+     * @return
+     */
+    public AdmissionStats getDiskAdmissionStats() {
+        return LruDiskCache.getInstance().getAdmissionStats();
+    }
+
+    /**
+     * 获取被合并的请求数，即同一个{@link Cache#key}的请求进行中时加入它、未单独请求的次数
+     *
+     * @return
+     */
+    public long getDeduplicatedCount() {
+        return mInFlight.getDeduplicatedCount();
+    }
+
     /**
      * 获取数据源
+     * <p>只组装Observable，不持有锁，可在任意线程并发调用</p>
      *
      * @param builder
      * @param <T>     参数实体类型
      * @return
      */
-    public synchronized <T> Disposable get(@NonNull Builder<T> builder) {
-        Disposable disposable;
-        Observable<Item<T>> memory;
-        Observable<Item<T>> disk;
-        Cache<T> cacheConfig = builder.getCache();
-        switch (cacheConfig.cacheMode) {
-            case Mode.MODE_MEMORY_CACHE_ONLY:
-                // memory缓存
-                memory = loadFromMemory(cacheConfig);
-                disposable = concatWithCallback(builder, memory, builder.getNetworkObservable());
-                break;
-            case Mode.MODE_DISK_CACHE_ONLY:
-                // 磁盘缓存
-                disk = loadFromDisk(cacheConfig);
-                disposable = concatWithCallback(builder, disk, builder.getNetworkObservable());
-                break;
-            case Mode.MODE_DOUBLE_CACHE:
-                //memory缓存+磁盘缓存
-                memory = loadFromMemory(cacheConfig);
-                disk = loadFromDisk(cacheConfig);
-                disposable = concatWithCallback(builder, memory, disk, builder.getNetworkObservable());
-                break;
-            default:
-                disposable = concatWithCallback(builder, builder.getNetworkObservable());
-                break;
-        }
-        return disposable;
+    public <T> Disposable get(@NonNull Builder<T> builder) {
+        // 组装时取定缓存配置，之后修改builder不影响已组装的请求
+        Cache<T> cache = builder.getCache();
+        return concatWithCallback(builder, cache, sourcesOf(cache, builder.getNetworkObservable()));
     }
 
     /**
      * 获取数据源
+     * <p>只组装Observable，不持有锁，可在任意线程并发调用</p>
      *
      * @param builder
      * @param <T>     参数实体类型
      * @return
      */
-    public synchronized <T> Observable<T> getObservable(@NonNull Builder<T> builder) {
-        Observable<Item<T>> memory;
-        Observable<Item<T>> disk;
-        Cache<T> cacheConfig = builder.getCache();
-        switch (cacheConfig.cacheMode) {
-            case Mode.MODE_MEMORY_CACHE_ONLY:
-                // memory缓存
-                memory = loadFromMemory(cacheConfig);
-                return concat(builder, memory, builder.getNetworkObservable());
-            case Mode.MODE_DISK_CACHE_ONLY:
-                // 磁盘缓存
-                disk = loadFromDisk(cacheConfig);
-                return concat(builder, disk, builder.getNetworkObservable());
-            case Mode.MODE_DOUBLE_CACHE:
-                //memory缓存+磁盘缓存
-                memory = loadFromMemory(cacheConfig);
-                disk = loadFromDisk(cacheConfig);
-                return concat(builder, memory, disk, builder.getNetworkObservable());
-            default:
-                return concat(builder, builder.getNetworkObservable());
-        }
+    public <T> Observable<T> getObservable(@NonNull Builder<T> builder) {
+        Cache<T> cache = builder.getCache();
+        return concat(builder, cache, sourcesOf(cache, builder.getNetworkObservable()));
     }
 
     /**
      * 获取数据源
+     * <p>只组装Observable，不持有锁，可在任意线程并发调用</p>
      *
      * @param builder
      * @param <T>     参数实体类型
      * @return
      */
-    public synchronized <T> void getAndSubscribe(@NonNull Builder<T> builder,
-                                        @NonNull RequestObserver<T> observer) {
-        Observable<Item<T>> memory;
-        Observable<Item<T>> disk;
-        Cache<T> cacheConfig = builder.getCache();
+    public <T> void getAndSubscribe(@NonNull Builder<T> builder,
+                                    @NonNull RequestObserver<T> observer) {
+        Cache<T> cache = builder.getCache();
+        concatWithObserver(builder, cache, observer, sourcesOf(cache, builder.getNetworkObservable()));
+    }
+
+    /**
+     * 空闲时预加载，结果只写入缓存，不回调{@link OnResultListener}，见{@link Prefetcher}
+     *
+     * @param builders 需设置缓存key和缓存模式
+     */
+    public void prefetch(@NonNull Builder<?>... builders) {
+        Prefetcher.getInstance().prefetch(Arrays.asList(builders));
+    }
+
+    /**
+     * 取消tag的全部请求：进行中的被dispose，等待调度的从队列移除，如页面销毁时
+     *
+     * @param tag 请求的tag，见{@link Builder#setTag(Object)}
+     */
+    public void cancel(@NonNull Object tag) {
+        List<Disposable> requests;
+        synchronized (mTaggedRequests) {
+            requests = mTaggedRequests.remove(tag);
+        }
+        if (requests != null) {
+            for (Disposable request : requests) {
+                request.dispose();
+            }
+        }
+        PriorityScheduler.getInstance().cancel(tag);
+    }
+
+    /**
+     * 按builder的优先级调度，有tag时登记到tag下以便取消，前台请求会取消进行中的预加载
+     *
+     * @param builder
+     * @param observable
+     * @param <T>
+     * @return
+     */
+    private <T> Observable<T> schedule(final Builder<?> builder, final Observable<T> observable) {
+        final Object tag = builder.getTag();
+        Observable<T> request = RxScheduler.toSubscribe(observable, builder.getPriority(), tag);
+        if (builder.getPriority() <= PriorityScheduler.Priority.NORMAL) {
+            // 前台请求开始时让出预加载
+            request = Prefetcher.getInstance().foreground(request);
+        }
+        final Observable<T> scheduled = request;
+        if (tag == null) {
+            return scheduled;
+        }
+        return Observable.defer(new Callable<ObservableSource<T>>() {
+            @Override
+            public ObservableSource<T> call() throws Exception {
+                final AtomicReference<Disposable> request = new AtomicReference<>();
+                return scheduled.doOnSubscribe(new Consumer<Disposable>() {
+                    @Override
+                    public void accept(Disposable disposable) throws Exception {
+                        request.set(disposable);
+                        synchronized (mTaggedRequests) {
+                            List<Disposable> requests = mTaggedRequests.get(tag);
+                            if (requests == null) {
+                                requests = new ArrayList<>();
+                                mTaggedRequests.put(tag, requests);
+                            }
+                            requests.add(disposable);
+                        }
+                    }
+                }).doFinally(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        synchronized (mTaggedRequests) {
+                            List<Disposable> requests = mTaggedRequests.get(tag);
+                            if (requests != null && requests.remove(request.get()) && requests.isEmpty()) {
+                                mTaggedRequests.remove(tag);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 按缓存模式组装数据源，顺序：memory>disk>network
+     * <p>缓存命中后上游结束，合并的请求随之移除，之后的请求重新读取缓存</p>
+     *
+     * @param cacheConfig
+     * @param network
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Observable<Item<T>>[] sourcesOf(final Cache<T> cacheConfig,
+                                                final Observable<Item<T>> network) {
         switch (cacheConfig.cacheMode) {
             case Mode.MODE_MEMORY_CACHE_ONLY:
                 // memory缓存
-                memory = loadFromMemory(cacheConfig);
-                concatWithObserver(builder, observer, memory, builder.getNetworkObservable());
-                break;
+                return new Observable[]{cacheOrNetwork(network, loadFromMemory(cacheConfig))};
             case Mode.MODE_DISK_CACHE_ONLY:
                 // 磁盘缓存
-                disk = loadFromDisk(cacheConfig);
-                concatWithObserver(builder, observer, disk, builder.getNetworkObservable());
-                break;
+                return new Observable[]{cacheOrNetwork(network, loadFromDisk(cacheConfig))};
             case Mode.MODE_DOUBLE_CACHE:
                 //memory缓存+磁盘缓存
-                memory = loadFromMemory(cacheConfig);
-                disk = loadFromDisk(cacheConfig);
-                concatWithObserver(builder, observer, memory, disk, builder.getNetworkObservable());
-                break;
+                return new Observable[]{cacheOrNetwork(network,
+                        loadFromMemory(cacheConfig), loadFromDisk(cacheConfig))};
+            case Mode.MODE_STALE_WHILE_REVALIDATE:
+                // 缓存命中即结束缓存阶段，之后总是请求网络
+                return new Observable[]{Observable.concatArray(loadFromMemory(cacheConfig),
+                        loadFromDisk(cacheConfig)).take(1), network};
             default:
-                concatWithObserver(builder, observer, builder.getNetworkObservable());
-                break;
+                return new Observable[]{network};
         }
     }
 
     /**
-     * 数据分级请求，顺序：memory>disk>network
+     * 依次读取缓存，第一个命中的缓存结束请求，都未命中时请求网络
      *
-     * @param builder
+     * @param network 可为null，此时只读取缓存
+     * @param caches
+     * @param <T>
+     * @return
+     */
+    @SafeVarargs
+    private static <T> Observable<Item<T>> cacheOrNetwork(final Observable<Item<T>> network,
+                                                          @NonNull Observable<Item<T>>... caches) {
+        Observable<Item<T>> cached = Observable.concatArray(caches).take(1);
+        return network == null ? cached : cached.switchIfEmpty(network);
+    }
+
+    /**
+     * 数据分级请求的上游，顺序：memory>disk>network，网络数据写入缓存
+     * <p>设置了key的请求与进行中的同key、优先级不低于它的请求合并，共享一次上游</p>
+     *
+     * @param cache    组装时取定的缓存配置
+     * @param priority 请求的优先级
      * @param sources
      * @param <T>
      * @return
      */
     @SafeVarargs
-    private final <T> Observable<T> concat(final Builder<T> builder,
-                                           @NonNull Observable<Item<T>>... sources) {
-        return RxScheduler.toSubscribe(Observable.concatArray(sources)
+    private final <T> Observable<Item<T>> upstreamOf(final Cache<T> cache,
+                                                     @PriorityScheduler.Priority int priority,
+                                                     @NonNull Observable<Item<T>>... sources) {
+        Observable<Item<T>> upstream = Observable.concatArray(sources)
                 .doOnNext(new Consumer<Item<T>>() {
                     @Override
                     public void accept(Item<T> item) throws Exception {
-                        Cache<T> cache = builder.getCache();
-                        Log.i(TAG, String.format("#concat doOnNext: tag:[%s] from %s",
-                                !StringUtils.isEmpty(cache.key) ? cache.key : "",
-                                getSourceAsString(item.source)));
                         if (cache.cacheMode == Mode.MODE_NONE_CACHE) {
                             return;
                         }
                         //缓存数据
                         if (item.data != null) {
                             if (item.source == Source.SOURCE_FROM_NETWORK) {
-                                Log.d(TAG, String.format("#concat todo cache:[%s] for %ds",
+                                Log.d(TAG, String.format("#upstream todo cache:[%s] for %ds",
                                         cache.key,
                                         cache.cacheTime));
-                                cache.data = item.data;
-                                doCache(cache);
+                                doCache(cache, item.data);
                             } else if (item.source == Source.SOURCE_FROM_DISK) {
                                 // no-op
                             }
                         }
                     }
+                });
+        if (cache.cacheMode == Mode.MODE_STALE_WHILE_REVALIDATE) {
+            upstream = revalidate(cache, upstream);
+        }
+        if (StringUtils.isEmpty(cache.key)) {
+            return upstream;
+        }
+        return mInFlight.share(cache.key, priority, upstream);
+    }
+
+    /**
+     * 丢弃与缓存内容相同的网络数据；已返回缓存时，后台刷新失败不向下游传递错误
+     *
+     * @param cache
+     * @param upstream 缓存阶段在前、网络在后的上游
+     * @param <T>
+     * @return
+     */
+    private <T> Observable<Item<T>> revalidate(final Cache<T> cache,
+                                               final Observable<Item<T>> upstream) {
+        return Observable.defer(new Callable<ObservableSource<Item<T>>>() {
+            @Override
+            public ObservableSource<Item<T>> call() throws Exception {
+                // 每次订阅单独记录返回过的缓存
+                final AtomicBoolean hit = new AtomicBoolean();
+                final AtomicReference<byte[]> cachedHash = new AtomicReference<>();
+                return upstream.filter(new Predicate<Item<T>>() {
+                    @Override
+                    public boolean test(Item<T> item) throws Exception {
+                        if (item.source != Source.SOURCE_FROM_NETWORK) {
+                            hit.set(true);
+                            cachedHash.set(contentHashOf(cache, item.data));
+                            return true;
+                        }
+                        byte[] stale = cachedHash.get();
+                        if (stale == null || !Arrays.equals(stale, contentHashOf(cache, item.data))) {
+                            return true;
+                        }
+                        Log.d(TAG, String.format("#revalidate tag:[%s] not modified", cache.key));
+                        return false;
+                    }
+                }).onErrorResumeNext(new Function<Throwable, ObservableSource<Item<T>>>() {
+                    @Override
+                    public ObservableSource<Item<T>> apply(Throwable throwable) throws Exception {
+                        if (!hit.get()) {
+                            return Observable.error(throwable);
+                        }
+                        Log.w(TAG, String.format("#revalidate tag:[%s] failed: %s",
+                                cache.key, throwable.getMessage()));
+                        return Observable.empty();
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * 缓存内容的摘要，按写入磁盘的编码计算
+     *
+     * @param cache
+     * @param data
+     * @param <T>
+     * @return 无法计算时返回null
+     */
+    @Nullable
+    private static <T> byte[] contentHashOf(final Cache<T> cache, final T data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance("MD5").digest(codecOf(cache, data).encode(data));
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.w(TAG, "can't hash " + cache.key, e);
+            return null;
+        }
+    }
+
+    /**
+     * 数据分级请求，顺序：memory>disk>network
+     *
+     * @param builder
+     * @param cache   组装时取定的缓存配置
+     * @param sources
+     * @param <T>
+     * @return
+     */
+    @SafeVarargs
+    private final <T> Observable<T> concat(final Builder<T> builder, final Cache<T> cache,
+                                           @NonNull Observable<Item<T>>... sources) {
+        return schedule(builder, upstreamOf(cache, builder.getPriority(), sources)
+                .doOnNext(new Consumer<Item<T>>() {
+                    @Override
+                    public void accept(Item<T> item) throws Exception {
+                        Log.i(TAG, String.format("#concat doOnNext: tag:[%s] from %s",
+                                !StringUtils.isEmpty(cache.key) ? cache.key : "",
+                                getSourceAsString(item.source)));
+                    }
                 }).flatMap(new Function<Item<T>, Observable<T>>() {
                     @Override
                     public Observable<T> apply(Item<T> item) throws Exception {
@@ -262,38 +471,20 @@ public final class RxRequest {
      * 数据分级请求，顺序：memory>disk>network
      *
      * @param builder
+     * @param cache   组装时取定的缓存配置
      * @param sources
      * @param <T>
      * @return
      */
     @SafeVarargs
-    private final <T> void concatWithObserver(final Builder<T> builder, RequestObserver<T> observer,
+    private final <T> void concatWithObserver(final Builder<T> builder, final Cache<T> cache,
+                                              RequestObserver<T> observer,
                                               @NonNull Observable<Item<T>>... sources) {
-        RxScheduler.toSubscribe(Observable.zip(Observable.just(builder), Observable.concatArray(sources)
-                .doOnNext(new Consumer<Item<T>>() {
-                    @Override
-                    public void accept(Item<T> item) throws Exception {
-                        Cache<T> cache = builder.getCache();
-                        if (cache.cacheMode == Mode.MODE_NONE_CACHE) {
-                            return;
-                        }
-                        //缓存数据
-                        if (item.data != null) {
-                            if (item.source == Source.SOURCE_FROM_NETWORK) {
-                                Log.d(TAG, String.format("#concatWithCallback todo cache:[%s] for %ds",
-                                        cache.key,
-                                        cache.cacheTime));
-                                cache.data = item.data;
-                                doCache(cache);
-                            } else if (item.source == Source.SOURCE_FROM_DISK) {
-                                // no-op
-                            }
-                        }
-                    }
-                }), new BiFunction<Builder<T>, Item<T>, Combine<T>>() {
+        Observable<Item<T>> upstream = upstreamOf(cache, builder.getPriority(), sources);
+        schedule(builder, upstream.map(new Function<Item<T>, Combine<T>>() {
             @Override
-            public Combine<T> apply(Builder<T> b, Item<T> i) throws Exception {
-                return new Combine<>(b, i);
+            public Combine<T> apply(Item<T> item) throws Exception {
+                return new Combine<>(builder, item);
             }
         })).subscribe(observer);
     }
@@ -302,38 +493,18 @@ public final class RxRequest {
      * 数据分级请求，顺序：memory>disk>network
      *
      * @param builder
+     * @param cache   组装时取定的缓存配置
      * @param sources
      * @param <T>
      * @return
      */
     @SafeVarargs
-    private final <T> Disposable concatWithCallback(final Builder<T> builder,
+    private final <T> Disposable concatWithCallback(final Builder<T> builder, final Cache<T> cache,
                                                     @NonNull Observable<Item<T>>... sources) {
-        return RxScheduler.toSubscribe(Observable.concatArray(sources)
-                .doOnNext(new Consumer<Item<T>>() {
-                    @Override
-                    public void accept(Item<T> item) throws Exception {
-                        Cache<T> cache = builder.getCache();
-                        if (cache.cacheMode == Mode.MODE_NONE_CACHE) {
-                            return;
-                        }
-                        //缓存数据
-                        if (item.data != null) {
-                            if (item.source == Source.SOURCE_FROM_NETWORK) {
-                                Log.d(TAG, String.format("#concatWithCallback todo cache:[%s] for %ds",
-                                        cache.key,
-                                        cache.cacheTime));
-                                cache.data = item.data;
-                                doCache(cache);
-                            } else if (item.source == Source.SOURCE_FROM_DISK) {
-                                // no-op
-                            }
-                        }
-                    }
-                })).subscribe(new Consumer<Item<T>>() {
+        Observable<Item<T>> upstream = upstreamOf(cache, builder.getPriority(), sources);
+        return schedule(builder, upstream).subscribe(new Consumer<Item<T>>() {
             @Override
             public void accept(@NonNull final Item<T> item) throws Exception {
-                Cache<T> cache = builder.getCache();
                 Log.i(TAG, String.format("#concatWithCallback accept: tag:[%s] from %s",
                         !StringUtils.isEmpty(cache.key) ? cache.key : "", getSourceAsString(item.source)));
                 if (builder.getOnResultListener() != null) {
@@ -355,7 +526,14 @@ public final class RxRequest {
         });
     }
 
-    private <T> void doCache(final Cache<T> cache) {
+    /**
+     * 写入缓存，数据单独传入而不写回共享的Cache，同一个Cache的并发请求互不干扰
+     *
+     * @param cache
+     * @param data
+     * @param <T>
+     */
+    private <T> void doCache(final Cache<T> cache, final T data) {
         Single.just(cache)
                 .subscribeOn(Schedulers.io())
                 .observeOn(Schedulers.io())
@@ -367,22 +545,7 @@ public final class RxRequest {
 
                     @Override
                     public void onSuccess(Cache<T> t) {
-                        switch (t.cacheMode) {
-                            case Mode.MODE_MEMORY_CACHE_ONLY:
-                                // memory缓存
-                                LruMemoryCache.getInstance().put(t.key, t.data, t.cacheTime);
-                                break;
-                            case Mode.MODE_DISK_CACHE_ONLY:
-                                // 磁盘缓存
-                                LruDiskCache.getInstance().put(t.key, t.data, t.cacheTime);
-                                break;
-                            case Mode.MODE_DOUBLE_CACHE:
-                                // memory缓存+磁盘缓存
-                                LruDoubleCache.getInstance().put(t.key, t.data, t.cacheTime);
-                                break;
-                            default:
-                                break;
-                        }
+                        writeCache(t, data);
                     }
 
                     @Override
@@ -392,6 +555,87 @@ public final class RxRequest {
                 });
     }
 
+    /**
+     * 在当前线程按缓存模式写入缓存
+     *
+     * @param cache
+     * @param data
+     * @param <T>
+     */
+    static <T> void writeCache(final Cache<T> cache, final T data) {
+        switch (cache.cacheMode) {
+            case Mode.MODE_MEMORY_CACHE_ONLY:
+                // memory缓存
+                LruMemoryCache.getInstance().put(cache.key, data, cache.cacheTime);
+                break;
+            case Mode.MODE_DISK_CACHE_ONLY:
+                // 磁盘缓存
+                LruDiskCache.getInstance().put(cache.key, data, codecOf(cache, data), cache.cacheTime);
+                break;
+            case Mode.MODE_DOUBLE_CACHE:
+            case Mode.MODE_STALE_WHILE_REVALIDATE:
+                // memory缓存+磁盘缓存
+                LruDoubleCache.getInstance().put(cache.key, data, codecOf(cache, data), cache.cacheTime);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 缓存数据编码后的字节数
+     *
+     * @param cache
+     * @param data
+     * @param <T>
+     * @return 无法编码时返回0
+     */
+    static <T> int sizeOf(final Cache<T> cache, final T data) {
+        try {
+            return codecOf(cache, data).encode(data).length;
+        } catch (IOException e) {
+            Log.w(TAG, "can't encode " + cache.key, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 写入缓存数据的编解码器，读写磁盘必须使用同一个
+     *
+     * @param cache
+     * @param data  未设置实体类类型时按它的类型编码
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> CacheCodec<T> codecOf(final Cache<T> cache, final T data) {
+        if (cache.target == null && cache.parcelableCreator == null) {
+            // 未设置实体类类型时按缓存内容的类型写入，T的类型被擦除，data的类型就是T或其子类
+            return CacheCodecs.get((Class<T>) data.getClass());
+        }
+        return codecOf(cache);
+    }
+
+    /**
+     * 读取缓存数据的编解码器，需要设置实体类类型
+     *
+     * @param cache
+     * @param <T>
+     * @return
+     * @throws IllegalStateException 未设置实体类类型
+     */
+    private static <T> CacheCodec<T> codecOf(final Cache<T> cache) {
+        if (cache.parcelableCreator != null) {
+            return CacheCodecs.parcelable(cache.parcelableCreator);
+        }
+        if (cache.target == null) {
+            throw new IllegalStateException(String.format(
+                    "tag:[%s] can't be read from disk without a target, see Cache.Builder#setTarget",
+                    cache.key));
+        }
+        return CacheCodecs.get(cache.target);
+    }
+
     /**
      * 从磁盘加载缓存数据
      *
@@ -404,44 +648,9 @@ public final class RxRequest {
             @Override
             public void subscribe(@NonNull ObservableEmitter<Item<T>> emitter) throws Exception {
                 Log.i(TAG, String.format("try to load tag:[%s] from disk", cache.key));
-                T data = null;
-                Log.i(TAG, String.format("[%s] match type...", cache.target.getCanonicalName()));
-                if (cache.target == byte[].class) {
-                    data = (T) LruDiskCache.getInstance().getBytes(cache.key);
-                } else if (cache.target == String.class) {
-                    data = (T) LruDiskCache.getInstance().getString(cache.key);
-                } else if (cache.target == Bitmap.class) {
-                    data = (T) LruDiskCache.getInstance().getBitmap(cache.key);
-                } else if (cache.target == Drawable.class) {
-                    data = (T) LruDiskCache.getInstance().getDrawable(cache.key);
-                } else if (cache.target == JSONObject.class) {
-                    data = (T) LruDiskCache.getInstance().getJSONObject(cache.key);
-                } else if (cache.target == JSONArray.class) {
-                    data = (T) LruDiskCache.getInstance().getJSONArray(cache.key);
-                } else {
-                    Class<?>[] interfaces = cache.target.getInterfaces();
-                    Log.i(TAG, String.format("[%s] match interface type...",
-                            cache.target.getCanonicalName()));
-                    for (Class<?> inter : interfaces) {
-                        Log.i(TAG, String.format("[%s] inter: %s",
-                                cache.target.getCanonicalName(), inter.getCanonicalName()));
-                        if (inter == Parcelable.class) {
-                            Log.i(TAG, String.format("[%s] matched: Parcelable.class",
-                                    cache.target.getCanonicalName()));
-                            data = LruDiskCache.getInstance().getParcelable(cache.key,
-                                    cache.parcelableCreator);
-                            break;
-                        } else if (inter == Serializable.class) {
-                            Log.i(TAG, String.format("[%s] matched: Serializable.class",
-                                    cache.target.getCanonicalName()));
-                            data = (T) LruDiskCache.getInstance().getSerializable(cache.key);
-                            break;
-                        }
-                    }
-                }
+                T data = LruDiskCache.getInstance().get(cache.key, codecOf(cache));
 
-                // 在操作符 concat 中，只有调用 onComplete 之后才会执行下一个 Observable
-                // 如果缓存数据不为空，则直接读取缓存数据，而不读取网络数据
+                // 命中时发射后结束，未命中时直接结束，由cacheOrNetwork决定是否继续读取
                 Item<T> result = new Item<>();
                 if (data != null) {
                     result.source = Source.SOURCE_FROM_DISK;
@@ -449,8 +658,8 @@ public final class RxRequest {
                     emitter.onNext(result);
                 } else {
                     result.source = Source.SOURCE_FROM_NETWORK;
-                    emitter.onComplete();
                 }
+                emitter.onComplete();
             }
         });
     }
@@ -469,16 +678,15 @@ public final class RxRequest {
                 Log.i(TAG, String.format("try to load tag:[%s] from memory", cache.key));
                 Item<T> result = new Item<>();
                 T data = LruMemoryCache.getInstance().get(cache.key);
-                // 在操作符 concat 中，只有调用 onComplete 之后才会执行下一个 Observable
-                // 如果缓存数据不为空，则直接读取缓存数据，而不读取网络数据
+                // 命中时发射后结束，未命中时直接结束，由cacheOrNetwork决定是否继续读取
                 if (data != null) {
                     result.source = Source.SOURCE_FROM_MEMORY;
                     result.data = data;
                     e.onNext(result);
                 } else {
                     result.source = Source.SOURCE_FROM_NETWORK;
-                    e.onComplete();
                 }
+                e.onComplete();
             }
         });
     }
@@ -503,6 +711,15 @@ public final class RxRequest {
         private Cache<T> cache = Cache.noCache();
         private Observable<Item<T>> networkObservable;
         private OnResultListener<T> onResultListener;
+        /**
+         * 调度优先级，默认NORMAL
+         */
+        private @PriorityScheduler.Priority
+        int priority = PriorityScheduler.Priority.NORMAL;
+        /**
+         * 取消请求使用的tag
+         */
+        private Object tag;
 
         public Builder() {
         }
@@ -548,6 +765,36 @@ public final class RxRequest {
             return this;
         }
 
+        /**
+         * 设置调度优先级，高优先级的请求先于等待中的低优先级请求执行
+         *
+         * @param priority one of {@link PriorityScheduler.Priority}.
+         * @return
+         */
+        public Builder<T> setPriority(@PriorityScheduler.Priority int priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        /**
+         * 设置请求的tag，如请求所属的页面，页面销毁时调用{@link RxRequest#cancel(Object)}取消
+         *
+         * @param tag
+         * @return
+         */
+        public Builder<T> setTag(@Nullable Object tag) {
+            this.tag = tag;
+            return this;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public Object getTag() {
+            return tag;
+        }
+
         public Observable<Item<T>> getNetworkObservable() {
             return networkObservable;
         }
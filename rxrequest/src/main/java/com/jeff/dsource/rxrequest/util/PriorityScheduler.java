@@ -0,0 +1,234 @@
+package com.jeff.dsource.rxrequest.util;
+
+import android.os.Process;
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.jeff.jframework.tools.ThreadUtils;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * 按优先级调度请求
+ * <p>
+ * 每个优先级一个等待队列，按优先级从高到低、同级先进先出取出执行。每个优先级有各自的并发上限，
+ * 非{@link Priority#CRITICAL}的请求还共用一个总并发上限，有更高优先级的请求在等待时，
+ * 低优先级的请求不会占用空出的位置。执行中的请求不会被打断，{@link Priority#CRITICAL}
+ * 不受总上限限制，不会被执行中的低优先级请求挡住。
+ * <p>
+ * 等待中的请求可按tag取消，见{@link #cancel(Object)}
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public final class PriorityScheduler {
+
+    @IntDef({Priority.CRITICAL, Priority.NORMAL, Priority.PREFETCH, Priority.BACKGROUND})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {
+        /**
+         * 当前焦点内容的请求
+         */
+        int CRITICAL = 0;
+        /**
+         * 默认优先级
+         */
+        int NORMAL = 1;
+        /**
+         * 预加载
+         */
+        int PREFETCH = 2;
+        /**
+         * 统计上报等后台请求
+         */
+        int BACKGROUND = 3;
+    }
+
+    private static final int PRIORITY_COUNT = 4;
+    private static final int[] DEFAULT_MAX_RUNNING = {4, 4, 2, 1};
+    private static final int DEFAULT_MAX_TOTAL_RUNNING = 6;
+
+    private final ArrayDeque<Task>[] mQueues;
+    private final int[] mMaxRunning = DEFAULT_MAX_RUNNING.clone();
+    private final int[] mRunning = new int[PRIORITY_COUNT];
+    private int mMaxTotalRunning = DEFAULT_MAX_TOTAL_RUNNING;
+    /**
+     * 执行中的非CRITICAL请求数
+     */
+    private int mTotalRunning;
+    private final ThreadPoolExecutor mExecutor;
+
+    private static final class Holder {
+        private static final PriorityScheduler INSTANCE = new PriorityScheduler();
+    }
+
+    public static PriorityScheduler getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    @SuppressWarnings("unchecked")
+    private PriorityScheduler() {
+        mQueues = new ArrayDeque[PRIORITY_COUNT];
+        for (int i = 0; i < PRIORITY_COUNT; i++) {
+            mQueues[i] = new ArrayDeque<>();
+        }
+        // 并发数由各优先级的上限控制，线程池本身不限
+        mExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+                60L, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                ThreadUtils.createThreadFactory("request", Thread.NORM_PRIORITY));
+    }
+
+    /**
+     * 获取按优先级调度的Scheduler
+     *
+     * @param priority 优先级
+     * @param tag      取消时使用的tag，如请求所属的页面，可为null
+     * @return
+     */
+    public Scheduler scheduler(@Priority final int priority, @Nullable final Object tag) {
+        return Schedulers.from(new Executor() {
+            @Override
+            public void execute(@NonNull Runnable command) {
+                enqueue(new Task(priority, tag, command));
+            }
+        });
+    }
+
+    /**
+     * 设置优先级的并发上限，默认CRITICAL 4，NORMAL 4，PREFETCH 2，BACKGROUND 1
+     *
+     * @param priority   优先级
+     * @param maxRunning 并发上限，至少为1
+     */
+    public void setMaxRunning(@Priority int priority, int maxRunning) {
+        synchronized (this) {
+            mMaxRunning[priority] = Math.max(1, maxRunning);
+        }
+        dispatch();
+    }
+
+    /**
+     * 设置非CRITICAL请求的总并发上限，默认6
+     *
+     * @param maxRunning 并发上限，至少为1
+     */
+    public void setMaxTotalRunning(int maxRunning) {
+        synchronized (this) {
+            mMaxTotalRunning = Math.max(1, maxRunning);
+        }
+        dispatch();
+    }
+
+    /**
+     * 移除tag的等待中的请求，执行中的请求不受影响
+     *
+     * @param tag 请求的tag
+     * @return 移除的请求数
+     */
+    public synchronized int cancel(@NonNull Object tag) {
+        int count = 0;
+        for (ArrayDeque<Task> queue : mQueues) {
+            for (Iterator<Task> iterator = queue.iterator(); iterator.hasNext(); ) {
+                if (iterator.next().tag == tag) {
+                    iterator.remove();
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 获取优先级的等待中的请求数
+     *
+     * @param priority 优先级
+     * @return
+     */
+    public synchronized int getQueuedCount(@Priority int priority) {
+        return mQueues[priority].size();
+    }
+
+    private void enqueue(Task task) {
+        synchronized (this) {
+            mQueues[task.priority].add(task);
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+                ArrayDeque<Task> queue = mQueues[priority];
+                boolean critical = priority == Priority.CRITICAL;
+                while (!queue.isEmpty() && mRunning[priority] < mMaxRunning[priority]) {
+                    if (!critical && mTotalRunning >= mMaxTotalRunning) {
+                        break;
+                    }
+                    mRunning[priority]++;
+                    if (!critical) {
+                        mTotalRunning++;
+                    }
+                    ready.add(queue.poll());
+                }
+                if (!queue.isEmpty() && !critical && mTotalRunning >= mMaxTotalRunning) {
+                    // 空出的位置留给等待中的更高优先级请求
+                    break;
+                }
+            }
+        }
+        for (Task task : ready) {
+            mExecutor.execute(task);
+        }
+    }
+
+    private void finish(Task task) {
+        synchronized (this) {
+            mRunning[task.priority]--;
+            if (task.priority != Priority.CRITICAL) {
+                mTotalRunning--;
+            }
+        }
+        dispatch();
+    }
+
+    private final class Task implements Runnable {
+        private final int priority;
+        private final Object tag;
+        private final Runnable command;
+
+        Task(int priority, Object tag, Runnable command) {
+            this.priority = priority;
+            this.tag = tag;
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(priority >= Priority.PREFETCH
+                    ? Process.THREAD_PRIORITY_BACKGROUND : Process.THREAD_PRIORITY_DEFAULT);
+            try {
+                command.run();
+            } finally {
+                finish(this);
+            }
+        }
+    }
+}
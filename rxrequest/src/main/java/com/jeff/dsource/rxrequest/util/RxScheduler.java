@@ -1,5 +1,7 @@
 package com.jeff.dsource.rxrequest.util;
 
+import android.support.annotation.Nullable;
+
 import io.reactivex.Observable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.schedulers.Schedulers;
@@ -26,4 +28,20 @@ public final class RxScheduler {
                 .unsubscribeOn(Schedulers.io())
                 .observeOn(AndroidSchedulers.mainThread());
     }
+
+    /**
+     * 按优先级处理 HTTP 请求，见{@link PriorityScheduler}
+     *
+     * @param <T>
+     * @param observable
+     * @param priority   优先级
+     * @param tag        取消时使用的tag，可为null
+     */
+    public static <T> Observable<T> toSubscribe(Observable<T> observable,
+                                                @PriorityScheduler.Priority int priority,
+                                                @Nullable Object tag) {
+        return observable.subscribeOn(PriorityScheduler.getInstance().scheduler(priority, tag))
+                .unsubscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread());
+    }
 }
@@ -0,0 +1,106 @@
+package com.jeff.dsource.rxrequest;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Observable;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * getObservable组装请求的吞吐量，只组装不订阅，按线程数测量每秒组装次数
+ * <p>
+ * 组装不持有锁，多线程的吞吐量不应低于单线程，见{@link RxRequest#getObservable(RxRequest.Builder)}。
+ * 基准测试耗时数秒，不随单元测试执行，需要时去掉{@link Ignore}单独运行，结果在断言信息中
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public class RxRequestAssemblyBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final long WARMUP_MS = 500;
+    private static final long MEASURE_MS = 1000;
+
+    @Ignore("基准测试，按需运行")
+    @Test
+    public void getObservable_assemblyThroughput() throws Exception {
+        final RxRequest.Builder<String> builder = new RxRequest.Builder<String>()
+                .setCache(new RxRequest.Cache.Builder<String>()
+                        .setKey("benchmark")
+                        .setCacheMode(RxRequest.Mode.MODE_MEMORY_CACHE_ONLY)
+                        .setCacheTime(60)
+                        .apply())
+                .setNetworkObservable(Observable.fromCallable(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return "benchmark";
+                    }
+                }))
+                .build();
+        assemble(builder, THREADS[THREADS.length - 1], WARMUP_MS);
+        long[] rates = new long[THREADS.length];
+        StringBuilder report = new StringBuilder("getObservable assembly ops/s:");
+        for (int i = 0; i < THREADS.length; i++) {
+            rates[i] = assemble(builder, THREADS[i], MEASURE_MS) * 1000 / MEASURE_MS;
+            report.append(String.format(" %d threads %d;", THREADS[i], rates[i]));
+        }
+        // 单核时多线程没有可比性
+        assumeTrue(report.toString(), Runtime.getRuntime().availableProcessors() > 1);
+        assertTrue(report.toString(), rates[0] > 0);
+        assertTrue(report.toString(), rates[THREADS.length - 1] >= rates[0]);
+    }
+
+    /**
+     * @return 各线程在duration内组装的总次数
+     */
+    private static long assemble(final RxRequest.Builder<String> builder, int threads,
+                                 final long duration) throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong total = new AtomicLong();
+        // 组装结果写入它，避免被优化掉
+        final AtomicLong sink = new AtomicLong();
+        try {
+            for (int t = 0; t < threads; t++) {
+                callers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            long ops = 0;
+                            long hash = 0;
+                            long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+                            while (System.nanoTime() < end) {
+                                hash += RxRequest.getInstance().getObservable(builder).hashCode();
+                                ops++;
+                            }
+                            total.addAndGet(ops);
+                            sink.addAndGet(hash);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            assertTrue(done.await(duration + 10000, TimeUnit.MILLISECONDS));
+        } finally {
+            callers.shutdownNow();
+        }
+        return total.get();
+    }
+}
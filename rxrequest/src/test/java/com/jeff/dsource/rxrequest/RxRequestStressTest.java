@@ -0,0 +1,344 @@
+package com.jeff.dsource.rxrequest;
+
+import com.jeff.jframework.tools.cache.LruMemoryCache;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.android.plugins.RxAndroidPlugins;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 多线程并发调用get、getObservable、getAndSubscribe，检查每次调用都收到自己的结果
+ * <p>
+ * 单元测试没有Context，只使用不读写磁盘的缓存模式，主线程换成trampoline
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public class RxRequestStressTest {
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 60;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @BeforeClass
+    public static void setUp() {
+        RxAndroidPlugins.setInitMainThreadSchedulerHandler(
+                new Function<Callable<Scheduler>, Scheduler>() {
+                    @Override
+                    public Scheduler apply(Callable<Scheduler> scheduler) throws Exception {
+                        return Schedulers.trampoline();
+                    }
+                });
+        RxAndroidPlugins.setMainThreadSchedulerHandler(new Function<Scheduler, Scheduler>() {
+            @Override
+            public Scheduler apply(Scheduler scheduler) throws Exception {
+                return Schedulers.trampoline();
+            }
+        });
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        RxAndroidPlugins.reset();
+    }
+
+    @Test
+    public void sharedBuilder_everyCallGetsResult() throws Exception {
+        final Results results = new Results(THREADS * ITERATIONS);
+        final RxRequest.Builder<String> builder = new RxRequest.Builder<String>()
+                .setCache(new RxRequest.Cache.Builder<String>()
+                        .setKey("stress-shared-builder")
+                        .setCacheMode(RxRequest.Mode.MODE_MEMORY_CACHE_ONLY)
+                        .setCacheTime(60)
+                        .apply())
+                .setNetworkObservable(network("shared-builder"))
+                .setOnResultListener(results.listener("shared-builder"))
+                .build();
+        stress(results, new Requests() {
+            @Override
+            public RxRequest.Builder<String> builder(int thread, int iteration) {
+                return builder;
+            }
+
+            @Override
+            public String expected(int thread, int iteration) {
+                return "shared-builder";
+            }
+        });
+    }
+
+    @Test
+    public void sharedCache_everyCallGetsResult() throws Exception {
+        final Results results = new Results(THREADS * ITERATIONS);
+        final RxRequest.Cache<String> cache = new RxRequest.Cache.Builder<String>()
+                .setKey("stress-shared-cache")
+                .setCacheMode(RxRequest.Mode.MODE_MEMORY_CACHE_ONLY)
+                .setCacheTime(60)
+                .apply();
+        stress(results, new Requests() {
+            @Override
+            public RxRequest.Builder<String> builder(int thread, int iteration) {
+                // 每次调用一个新的Builder，共用同一个Cache
+                return new RxRequest.Builder<String>()
+                        .setCache(cache)
+                        .setNetworkObservable(network("shared-cache"))
+                        .setOnResultListener(results.listener("shared-cache"))
+                        .build();
+            }
+
+            @Override
+            public String expected(int thread, int iteration) {
+                return "shared-cache";
+            }
+        });
+    }
+
+    @Test
+    public void distinctBuilders_everyCallGetsOwnResult() throws Exception {
+        final Results results = new Results(THREADS * ITERATIONS);
+        stress(results, new Requests() {
+            @Override
+            public RxRequest.Builder<String> builder(int thread, int iteration) {
+                String key = expected(thread, iteration);
+                return new RxRequest.Builder<String>()
+                        .setCache(new RxRequest.Cache.Builder<String>()
+                                .setKey(key)
+                                .setCacheMode(thread % 2 == 0
+                                        ? RxRequest.Mode.MODE_MEMORY_CACHE_ONLY
+                                        : RxRequest.Mode.MODE_NONE_CACHE)
+                                .setCacheTime(60)
+                                .apply())
+                        .setNetworkObservable(network(key))
+                        .setOnResultListener(results.listener(key))
+                        .build();
+            }
+
+            @Override
+            public String expected(int thread, int iteration) {
+                return "stress-" + thread + "-" + iteration;
+            }
+        });
+    }
+
+    @Test
+    public void cacheHit_completesAndLaterRequestReadsNewValue() throws Exception {
+        final String key = "stress-refresh";
+        RxRequest.Cache<String> cache = new RxRequest.Cache.Builder<String>()
+                .setKey(key)
+                .setCacheMode(RxRequest.Mode.MODE_MEMORY_CACHE_ONLY)
+                .setCacheTime(60)
+                .apply();
+        // 网络结果异步写入memory缓存
+        assertEquals("v1", requestOnce(cache, "v1"));
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+        while (!"v1".equals(LruMemoryCache.getInstance().<String>get(key))) {
+            assertTrue("v1 not cached", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        // memory命中，请求必须结束，否则合并的请求一直保留旧数据
+        assertEquals("v1", requestOnce(cache, "v2"));
+        LruMemoryCache.getInstance().put(key, "v2", 60);
+        assertEquals("v2", requestOnce(cache, "v2"));
+    }
+
+    /**
+     * 用getAndSubscribe请求一次，等待结果和结束
+     *
+     * @param network 网络返回的数据
+     * @return 收到的数据
+     */
+    private static String requestOnce(RxRequest.Cache<String> cache, final String network)
+            throws Exception {
+        final AtomicReference<String> result = new AtomicReference<>();
+        final AtomicReference<String> error = new AtomicReference<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        RxRequest.Builder<String> builder = new RxRequest.Builder<String>()
+                .setCache(cache)
+                .setNetworkObservable(network(network))
+                .build();
+        RxRequest.getInstance().getAndSubscribe(builder, RxRequest.getInstance().new RequestObserver<String>() {
+            @Override
+            protected void onStart() {
+                // 跳过网络状态检查，单元测试没有Context
+            }
+
+            @Override
+            public void onResult(int source, String data) {
+                result.set(data);
+            }
+
+            @Override
+            public void onError(int code, String message) {
+                error.set(String.format("%s error %d: %s", network, code, message));
+                completed.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                super.onComplete();
+                completed.countDown();
+            }
+        });
+        assertTrue("request not completed", completed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertNull(error.get());
+        return result.get();
+    }
+
+    /**
+     * 各线程同时开始，轮流使用三种调用方式，等待全部调用收到结果
+     */
+    private static void stress(final Results results, final Requests requests) throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(THREADS);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                callers.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return;
+                        }
+                        for (int i = 0; i < ITERATIONS; i++) {
+                            try {
+                                request(results, requests, thread, i);
+                            } catch (Throwable e) {
+                                results.fail(String.format("thread %d call %d: %s", thread, i, e));
+                            }
+                        }
+                    }
+                });
+            }
+            start.countDown();
+            assertTrue("calls without result: " + results.done.getCount(),
+                    results.done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertTrue(results.failures.toString(), results.failures.isEmpty());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static void request(Results results, Requests requests, int thread, int iteration) {
+        RxRequest.Builder<String> builder = requests.builder(thread, iteration);
+        String expected = requests.expected(thread, iteration);
+        switch ((thread + iteration) % 3) {
+            case 0:
+                RxRequest.getInstance().get(builder);
+                break;
+            case 1:
+                // 只取第一个结果，与get、getAndSubscribe一样每次调用检查一个结果
+                results.check(expected, RxRequest.getInstance().getObservable(builder).blockingFirst());
+                break;
+            default:
+                RxRequest.getInstance().getAndSubscribe(builder, results.observer(expected));
+                break;
+        }
+    }
+
+    private static Observable<String> network(final String value) {
+        return Observable.fromCallable(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return value;
+            }
+        });
+    }
+
+    private interface Requests {
+        RxRequest.Builder<String> builder(int thread, int iteration);
+
+        String expected(int thread, int iteration);
+    }
+
+    /**
+     * 每次调用收到一个结果或错误，结果不对或出错时记录
+     */
+    private static final class Results {
+        private final CountDownLatch done;
+        private final Queue<String> failures = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger extra = new AtomicInteger();
+
+        Results(int calls) {
+            done = new CountDownLatch(calls);
+        }
+
+        void check(String expected, String actual) {
+            if (!expected.equals(actual)) {
+                fail(String.format("expected %s but was %s", expected, actual));
+                return;
+            }
+            countDown();
+        }
+
+        void fail(String message) {
+            failures.add(message);
+            countDown();
+        }
+
+        private void countDown() {
+            if (done.getCount() == 0) {
+                // 多出的回调说明有调用收到了不止一个结果
+                failures.add("extra result #" + extra.incrementAndGet());
+            }
+            done.countDown();
+        }
+
+        RxRequest.OnResultListener<String> listener(final String expected) {
+            return new RxRequest.OnResultListener<String>() {
+                @Override
+                public void onResult(int source, String data) {
+                    check(expected, data);
+                }
+
+                @Override
+                public void onError(int code, String message) {
+                    fail(String.format("%s error %d: %s", expected, code, message));
+                }
+            };
+        }
+
+        RxRequest.RequestObserver<String> observer(final String expected) {
+            return RxRequest.getInstance().new RequestObserver<String>() {
+                @Override
+                protected void onStart() {
+                    // 跳过网络状态检查，单元测试没有Context
+                }
+
+                @Override
+                public void onResult(int source, String data) {
+                    check(expected, data);
+                }
+
+                @Override
+                public void onError(int code, String message) {
+                    fail(String.format("%s error %d: %s", expected, code, message));
+                }
+            };
+        }
+    }
+}
@@ -258,6 +258,22 @@ public final class NetworkUtils {
         return ni != null && ni.getType() == ConnectivityManager.TYPE_WIFI;
     }
 
+    /**
+     * Return whether the active network is connected and not metered, so large transfers
+     * cost the user nothing.
+     * <p>Must hold
+     * {@code <uses-permission android:name="android.permission.ACCESS_NETWORK_STATE" />}</p>
+     *
+     * @return {@code true}: unmetered<br>{@code false}: metered or disconnected
+     */
+    @RequiresPermission(ACCESS_NETWORK_STATE)
+    public static boolean isUnmetered() {
+        ConnectivityManager cm =
+                (ConnectivityManager) ContextUtils.getContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (cm == null) return false;
+        return isConnected(cm.getActiveNetworkInfo()) && !cm.isActiveNetworkMetered();
+    }
+
     /**
      * Return whether wifi is available.
      * <p>Must hold
@@ -0,0 +1,155 @@
+package com.jeff.jframework.tools.cache;
+
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
+
+import com.jeff.jframework.core.CannotCreateException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link AdmissionPolicy}s of {@link LruDiskCache}.
+ * <p>
+ * The policies remember the keys they were asked about in memory only, a restart forgets
+ * them.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public final class AdmissionPolicies {
+    /**
+     * The count of keys a policy remembers by default.
+     */
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    private AdmissionPolicies() {
+        throw new CannotCreateException(getClass());
+    }
+
+    /**
+     * Admit a key put a second time within the window of its last put.
+     *
+     * @param window The max time between two puts.
+     * @param unit   The unit of window.
+     * @return the policy
+     */
+    public static AdmissionPolicy secondRequestWithin(final long window,
+                                                      @NonNull final TimeUnit unit) {
+        return secondRequestWithin(window, unit, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Admit a key put a second time within the window of its last put.
+     *
+     * @param window   The max time between two puts.
+     * @param unit     The unit of window.
+     * @param capacity The count of keys remembered, the least recently put are forgotten.
+     * @return the policy
+     */
+    public static AdmissionPolicy secondRequestWithin(final long window,
+                                                      @NonNull final TimeUnit unit,
+                                                      final int capacity) {
+        return new Doorkeeper(unit.toMillis(window), capacity);
+    }
+
+    /**
+     * Admit a key put at least the given times recently, as counted by a frequency sketch.
+     * The counts are halved as the sketch fills, so old puts fade.
+     *
+     * @param minPuts The min count of recent puts, this one included, at most 15.
+     * @return the policy
+     */
+    public static AdmissionPolicy frequency(final int minPuts) {
+        return frequency(minPuts, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Admit a key put at least the given times recently, as counted by a frequency sketch.
+     * The counts are halved as the sketch fills, so old puts fade.
+     *
+     * @param minPuts  The min count of recent puts, this one included, at most 15.
+     * @param capacity The expected count of distinct keys.
+     * @return the policy
+     */
+    public static AdmissionPolicy frequency(final int minPuts, final int capacity) {
+        return new Frequency(Math.min(minPuts, 15), capacity);
+    }
+
+    /**
+     * Admit values up to the given size.
+     *
+     * @param maxBytes The max size of value, in bytes.
+     * @return the policy
+     */
+    public static AdmissionPolicy maxSize(final long maxBytes) {
+        return new AdmissionPolicy() {
+            @Override
+            public boolean admit(@NonNull String key, long size) {
+                return size <= maxBytes;
+            }
+        };
+    }
+
+    /**
+     * Admit what every policy admits. Every policy is asked, so each sees every put.
+     *
+     * @param policies The policies.
+     * @return the policy
+     */
+    public static AdmissionPolicy allOf(@NonNull final AdmissionPolicy... policies) {
+        return new AdmissionPolicy() {
+            @Override
+            public boolean admit(@NonNull String key, long size) {
+                boolean admitted = true;
+                for (AdmissionPolicy policy : policies) {
+                    admitted &= policy.admit(key, size);
+                }
+                return admitted;
+            }
+        };
+    }
+
+    private static final class Doorkeeper implements AdmissionPolicy {
+        private final long windowMillis;
+        private final LinkedHashMap<String, Long> lastPuts;
+
+        Doorkeeper(final long windowMillis, final int capacity) {
+            this.windowMillis = windowMillis;
+            lastPuts = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        @Override
+        public synchronized boolean admit(@NonNull String key, long size) {
+            long now = SystemClock.elapsedRealtime();
+            Long last = lastPuts.put(key, now);
+            return last != null && now - last <= windowMillis;
+        }
+    }
+
+    private static final class Frequency implements AdmissionPolicy {
+        private final int minPuts;
+        private final FrequencySketch sketch;
+
+        Frequency(final int minPuts, final int capacity) {
+            this.minPuts = minPuts;
+            sketch = new FrequencySketch(capacity);
+        }
+
+        @Override
+        public synchronized boolean admit(@NonNull String key, long size) {
+            int hash = TinyLfuStore.spread(key);
+            sketch.increment(hash);
+            return sketch.frequency(hash) >= minPuts;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.jeff.jframework.tools.cache;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Decide which puts of a {@link LruDiskCache} are written to disk, so values put once and
+ * never read again don't wear the flash and evict the ones worth keeping.
+ * <p>
+ * See {@link AdmissionPolicies} for the policies at hand.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public interface AdmissionPolicy {
+
+    /**
+     * Called on every put, from any thread.
+     *
+     * @param key  The key of cache.
+     * @param size The size of value, in bytes, before compression.
+     * @return {@code true}: write it<br>{@code false}: keep it off the disk
+     */
+    boolean admit(@NonNull String key, long size);
+}
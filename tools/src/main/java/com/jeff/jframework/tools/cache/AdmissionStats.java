@@ -0,0 +1,50 @@
+package com.jeff.jframework.tools.cache;
+
+import java.util.Locale;
+
+/**
+ * How the {@link AdmissionPolicy} of a {@link LruDiskCache} answered its puts.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public final class AdmissionStats {
+    private final long admitted;
+    private final long rejected;
+
+    AdmissionStats(final long admitted, final long rejected) {
+        this.admitted = admitted;
+        this.rejected = rejected;
+    }
+
+    /**
+     * Return the count of puts written to disk, puts without a policy excluded.
+     */
+    public long getAdmitted() {
+        return admitted;
+    }
+
+    /**
+     * Return the count of puts kept off the disk.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Return the share of puts written to disk.
+     */
+    public double getAdmissionRate() {
+        long puts = admitted + rejected;
+        return puts == 0 ? 1 : (double) admitted / puts;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "AdmissionStats{admitted=%d, rejected=%d, rate=%.4f}",
+                admitted, rejected, getAdmissionRate());
+    }
+}
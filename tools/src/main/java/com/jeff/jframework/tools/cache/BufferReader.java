@@ -0,0 +1,27 @@
+package com.jeff.jframework.tools.cache;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read the bytes of a value in place, see
+ * {@link LruMemoryCache#readBuffer(String, BufferReader)}.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public interface BufferReader<R> {
+
+    /**
+     * Read the bytes of the value. The buffer is valid during the call only, it mustn't be
+     * kept or handed to another thread.
+     *
+     * @param buffer A read-only buffer of the bytes, from position 0 to its limit.
+     * @return the result of the read
+     */
+    R read(@NonNull ByteBuffer buffer);
+}
@@ -0,0 +1,37 @@
+package com.jeff.jframework.tools.cache;
+
+import android.support.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Converts cached values of one type to bytes and back.
+ * <p>
+ * Codecs are looked up by type through {@link CacheCodecs}, register one there to take over
+ * the serialization of a type.
+ *
+ * @param <T> The type of value.
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public interface CacheCodec<T> {
+
+    @NonNull
+    byte[] encode(@NonNull T value) throws IOException;
+
+    T decode(@NonNull byte[] bytes) throws IOException;
+
+    /**
+     * Creates codecs for the types it supports, asked by {@link CacheCodecs#get(Class)}
+     * once per type.
+     */
+    interface Factory {
+        /**
+         * @return the codec or null if the type isn't supported
+         */
+        <T> CacheCodec<T> create(@NonNull Class<T> type);
+    }
+}
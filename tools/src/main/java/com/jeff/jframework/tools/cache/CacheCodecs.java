@@ -0,0 +1,562 @@
+package com.jeff.jframework.tools.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.Drawable;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.jeff.jframework.core.CannotCreateException;
+import com.jeff.jframework.tools.CloseUtils;
+import com.jeff.jframework.tools.GsonUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of {@link CacheCodec}s by type.
+ * <p>
+ * {@link #get(Class)} resolves a codec once per type and caches it, in this order:
+ * <ol>
+ * <li>a codec registered for the type by {@link #register(Class, CacheCodec)}</li>
+ * <li>a codec created by a factory registered by {@link #registerFactory(CacheCodec.Factory)}</li>
+ * <li>the built-ins: {@code byte[]}, {@link String}, {@link JSONObject}, {@link JSONArray},
+ * boxed primitives in a compact binary form, {@link Bitmap} and {@link Drawable} as raw
+ * pixels and {@link Parcelable} by its {@code CREATOR}</li>
+ * <li>a codec registered for a super class or interface of the type</li>
+ * <li>Java serialization for platform types such as {@code java.util.ArrayList}</li>
+ * <li>Gson streaming for every other type</li>
+ * </ol>
+ * Raw pixels are several times larger than PNG but cost a copy instead of an encode, pair
+ * them with {@link LruDiskCache#setCompression(int, int)} if space matters.
+ * <p>
+ * Values written before the registry are still read: the bitmap and drawable codecs read PNG
+ * and the Gson codecs read Java serialization, both told apart from the current formats by
+ * their leading bytes.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public final class CacheCodecs {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<Class<?>, CacheCodec<?>> REGISTERED = new ConcurrentHashMap<>();
+    private static final List<CacheCodec.Factory> FACTORIES = new CopyOnWriteArrayList<>();
+    private static final Map<Class<?>, CacheCodec<?>> RESOLVED = new ConcurrentHashMap<>();
+
+    private CacheCodecs() {
+        throw new CannotCreateException(getClass());
+    }
+
+    /**
+     * Register the codec of the type and of its sub types without a codec of their own.
+     */
+    public static <T> void register(@NonNull final Class<T> type, @NonNull final CacheCodec<T> codec) {
+        REGISTERED.put(type, codec);
+        RESOLVED.clear();
+    }
+
+    /**
+     * Register a factory, asked before the built-in codecs.
+     */
+    public static void registerFactory(@NonNull final CacheCodec.Factory factory) {
+        FACTORIES.add(factory);
+        RESOLVED.clear();
+    }
+
+    /**
+     * Return the codec of the type.
+     *
+     * @param type The type of value.
+     * @return the codec of the type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CacheCodec<T> get(@NonNull final Class<T> type) {
+        CacheCodec<T> codec = (CacheCodec<T>) RESOLVED.get(type);
+        if (codec == null) {
+            codec = resolve(type);
+            RESOLVED.put(type, codec);
+        }
+        return codec;
+    }
+
+    /**
+     * Return a Gson codec of the type, for generic types such as {@code List<Item>}.
+     */
+    public static <T> CacheCodec<T> gson(@NonNull final TypeToken<T> type) {
+        return new GsonCodec<>(GsonUtils.getGson(), GsonUtils.getGson().getAdapter(type),
+                type.getRawType());
+    }
+
+    /**
+     * Return the codec of Java serialization, for values of any serializable type.
+     */
+    public static CacheCodec<Object> serializable() {
+        return SERIALIZABLE;
+    }
+
+    /**
+     * Return a codec of the parcelable type.
+     */
+    public static <T> CacheCodec<T> parcelable(@NonNull final Parcelable.Creator<T> creator) {
+        return new ParcelableCodec<>(creator);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> CacheCodec<T> resolve(final Class<T> type) {
+        CacheCodec<T> codec = (CacheCodec<T>) REGISTERED.get(type);
+        if (codec != null) return codec;
+        for (CacheCodec.Factory factory : FACTORIES) {
+            codec = factory.create(type);
+            if (codec != null) return codec;
+        }
+        codec = (CacheCodec<T>) builtIn(type);
+        if (codec != null) return codec;
+        codec = (CacheCodec<T>) registeredForSuperType(type);
+        if (codec != null) return codec;
+        if (isPlatformType(type)) return (CacheCodec<T>) SERIALIZABLE;
+        return new GsonCodec<>(GsonUtils.getGson(), GsonUtils.getGson().getAdapter(type), type);
+    }
+
+    private static CacheCodec<?> builtIn(final Class<?> type) {
+        if (type == byte[].class) return BYTES;
+        if (type == String.class) return STRING;
+        if (type == JSONObject.class) return JSON_OBJECT;
+        if (type == JSONArray.class) return JSON_ARRAY;
+        if (type == Bitmap.class) return BITMAP;
+        if (Drawable.class.isAssignableFrom(type)) return DRAWABLE;
+        int kind = PrimitiveCodec.kindOf(type);
+        if (kind >= 0) return new PrimitiveCodec<>(kind);
+        if (Parcelable.class.isAssignableFrom(type)) {
+            Parcelable.Creator<?> creator = creatorOf(type);
+            if (creator != null) return new ParcelableCodec<>(creator);
+        }
+        return null;
+    }
+
+    private static CacheCodec<?> registeredForSuperType(final Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            CacheCodec<?> codec = REGISTERED.get(c);
+            if (codec != null) return codec;
+            for (Class<?> inter : c.getInterfaces()) {
+                codec = REGISTERED.get(inter);
+                if (codec != null) return codec;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isPlatformType(final Class<?> type) {
+        if (type.isArray() || type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+            return true;
+        }
+        String name = type.getName();
+        return name.startsWith("java.") || name.startsWith("javax.") || name.startsWith("android.");
+    }
+
+    private static Parcelable.Creator<?> creatorOf(final Class<?> type) {
+        try {
+            Field field = type.getField("CREATOR");
+            if (!Modifier.isStatic(field.getModifiers())) return null;
+            Object creator = field.get(null);
+            return creator instanceof Parcelable.Creator ? (Parcelable.Creator<?>) creator : null;
+        } catch (NoSuchFieldException e) {
+            return null;
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // built-in codecs
+    ///////////////////////////////////////////////////////////////////////////
+
+    private static final CacheCodec<byte[]> BYTES = new CacheCodec<byte[]>() {
+        @NonNull
+        @Override
+        public byte[] encode(@NonNull byte[] value) {
+            return value;
+        }
+
+        @Override
+        public byte[] decode(@NonNull byte[] bytes) {
+            return bytes;
+        }
+    };
+
+    private static final CacheCodec<String> STRING = new CacheCodec<String>() {
+        @NonNull
+        @Override
+        public byte[] encode(@NonNull String value) {
+            return value.getBytes(UTF_8);
+        }
+
+        @Override
+        public String decode(@NonNull byte[] bytes) {
+            return new String(bytes, UTF_8);
+        }
+    };
+
+    private static final CacheCodec<JSONObject> JSON_OBJECT = new CacheCodec<JSONObject>() {
+        @NonNull
+        @Override
+        public byte[] encode(@NonNull JSONObject value) {
+            return value.toString().getBytes(UTF_8);
+        }
+
+        @Override
+        public JSONObject decode(@NonNull byte[] bytes) throws IOException {
+            try {
+                return new JSONObject(new String(bytes, UTF_8));
+            } catch (JSONException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+    };
+
+    private static final CacheCodec<JSONArray> JSON_ARRAY = new CacheCodec<JSONArray>() {
+        @NonNull
+        @Override
+        public byte[] encode(@NonNull JSONArray value) {
+            return value.toString().getBytes(UTF_8);
+        }
+
+        @Override
+        public JSONArray decode(@NonNull byte[] bytes) throws IOException {
+            try {
+                return new JSONArray(new String(bytes, UTF_8));
+            } catch (JSONException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+    };
+
+    /**
+     * Width, height, config and hasAlpha followed by the pixels as laid out in memory. PNG, as
+     * written before the registry, is decoded too.
+     */
+    private static final CacheCodec<Bitmap> BITMAP = new CacheCodec<Bitmap>() {
+        private static final int HEADER_LEN = 10;
+
+        @NonNull
+        @Override
+        public byte[] encode(@NonNull Bitmap value) throws IOException {
+            int config = configIdOf(value.getConfig());
+            if (config < 0) {
+                // e.g. hardware bitmaps can't hand out their pixels
+                value = value.copy(Bitmap.Config.ARGB_8888, false);
+                if (value == null) throw new IOException("can't copy bitmap");
+                config = configIdOf(Bitmap.Config.ARGB_8888);
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_LEN + value.getRowBytes() * value.getHeight());
+            buffer.putInt(value.getWidth())
+                    .putInt(value.getHeight())
+                    .put((byte) config)
+                    .put((byte) (value.hasAlpha() ? 1 : 0));
+            value.copyPixelsToBuffer(buffer);
+            return buffer.array();
+        }
+
+        @Override
+        public Bitmap decode(@NonNull byte[] bytes) throws IOException {
+            if (startsWith(bytes, PNG_SIGNATURE)) {
+                // a width of the raw form never starts with the signature's high bit
+                Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+                if (bitmap == null) throw new IOException("corrupt png");
+                return bitmap;
+            }
+            if (bytes.length < HEADER_LEN) throw new IOException("truncated bitmap");
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            int width = buffer.getInt();
+            int height = buffer.getInt();
+            int config = buffer.get();
+            boolean hasAlpha = buffer.get() != 0;
+            if (width <= 0 || height <= 0 || config < 0 || config >= BITMAP_CONFIGS.length) {
+                throw new IOException("corrupt bitmap header");
+            }
+            Bitmap bitmap = Bitmap.createBitmap(width, height, BITMAP_CONFIGS[config]);
+            try {
+                bitmap.copyPixelsFromBuffer(buffer);
+            } catch (RuntimeException e) {
+                throw new IOException("corrupt bitmap pixels: " + e.getMessage());
+            }
+            bitmap.setHasAlpha(hasAlpha);
+            return bitmap;
+        }
+    };
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G'};
+    /**
+     * The stream magic of Java serialization, never the start of JSON.
+     */
+    private static final byte[] SERIALIZATION_MAGIC = {(byte) 0xAC, (byte) 0xED};
+
+    private static boolean startsWith(final byte[] bytes, final byte[] prefix) {
+        if (bytes.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static final Bitmap.Config[] BITMAP_CONFIGS = {
+            Bitmap.Config.ALPHA_8, Bitmap.Config.RGB_565, Bitmap.Config.ARGB_4444, Bitmap.Config.ARGB_8888
+    };
+
+    private static int configIdOf(final Bitmap.Config config) {
+        for (int i = 0; i < BITMAP_CONFIGS.length; i++) {
+            if (BITMAP_CONFIGS[i] == config) return i;
+        }
+        return -1;
+    }
+
+    private static final CacheCodec<Drawable> DRAWABLE = new CacheCodec<Drawable>() {
+        @NonNull
+        @Override
+        public byte[] encode(@NonNull Drawable value) throws IOException {
+            return BITMAP.encode(LruDiskCache.drawable2Bitmap(value));
+        }
+
+        @Override
+        public Drawable decode(@NonNull byte[] bytes) throws IOException {
+            return LruDiskCache.bitmap2Drawable(BITMAP.decode(bytes));
+        }
+    };
+
+    private static final CacheCodec<Object> SERIALIZABLE = new CacheCodec<Object>() {
+        @NonNull
+        @Override
+        public byte[] encode(@NonNull Object value) throws IOException {
+            if (!(value instanceof Serializable)) {
+                throw new IOException(value.getClass().getName() + " isn't serializable");
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(baos);
+            try {
+                oos.writeObject(value);
+            } finally {
+                CloseUtils.closeIOQuietly(oos);
+            }
+            return baos.toByteArray();
+        }
+
+        @Override
+        public Object decode(@NonNull byte[] bytes) throws IOException {
+            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+            try {
+                return ois.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e.getMessage());
+            } finally {
+                CloseUtils.closeIOQuietly(ois);
+            }
+        }
+    };
+
+    /**
+     * Boxed primitives in big-endian, a boolean as one byte.
+     */
+    private static final class PrimitiveCodec<T> implements CacheCodec<T> {
+        private static final Class<?>[] TYPES = {
+                Boolean.class, Byte.class, Short.class, Character.class,
+                Integer.class, Long.class, Float.class, Double.class
+        };
+        private static final int[] SIZES = {1, 1, 2, 2, 4, 8, 4, 8};
+
+        private final int kind;
+
+        private PrimitiveCodec(final int kind) {
+            this.kind = kind;
+        }
+
+        static int kindOf(final Class<?> type) {
+            for (int i = 0; i < TYPES.length; i++) {
+                if (TYPES[i] == type) return i;
+            }
+            return -1;
+        }
+
+        @NonNull
+        @Override
+        public byte[] encode(@NonNull T value) {
+            ByteBuffer buffer = ByteBuffer.allocate(SIZES[kind]);
+            switch (kind) {
+                case 0:
+                    buffer.put((byte) ((Boolean) value ? 1 : 0));
+                    break;
+                case 1:
+                    buffer.put((Byte) value);
+                    break;
+                case 2:
+                    buffer.putShort((Short) value);
+                    break;
+                case 3:
+                    buffer.putChar((Character) value);
+                    break;
+                case 4:
+                    buffer.putInt((Integer) value);
+                    break;
+                case 5:
+                    buffer.putLong((Long) value);
+                    break;
+                case 6:
+                    buffer.putFloat((Float) value);
+                    break;
+                default:
+                    buffer.putDouble((Double) value);
+                    break;
+            }
+            return buffer.array();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T decode(@NonNull byte[] bytes) throws IOException {
+            if (bytes.length != SIZES[kind]) throw new IOException("unexpected length " + bytes.length);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            Object value;
+            switch (kind) {
+                case 0:
+                    value = buffer.get() != 0;
+                    break;
+                case 1:
+                    value = buffer.get();
+                    break;
+                case 2:
+                    value = buffer.getShort();
+                    break;
+                case 3:
+                    value = buffer.getChar();
+                    break;
+                case 4:
+                    value = buffer.getInt();
+                    break;
+                case 5:
+                    value = buffer.getLong();
+                    break;
+                case 6:
+                    value = buffer.getFloat();
+                    break;
+                default:
+                    value = buffer.getDouble();
+                    break;
+            }
+            return (T) value;
+        }
+    }
+
+    private static final class ParcelableCodec<T> implements CacheCodec<T> {
+        private final Parcelable.Creator<?> creator;
+
+        private ParcelableCodec(final Parcelable.Creator<?> creator) {
+            this.creator = creator;
+        }
+
+        @NonNull
+        @Override
+        public byte[] encode(@NonNull T value) {
+            Parcel parcel = Parcel.obtain();
+            try {
+                ((Parcelable) value).writeToParcel(parcel, 0);
+                return parcel.marshall();
+            } finally {
+                parcel.recycle();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T decode(@NonNull byte[] bytes) throws IOException {
+            Parcel parcel = Parcel.obtain();
+            try {
+                parcel.unmarshall(bytes, 0, bytes.length);
+                parcel.setDataPosition(0);
+                return (T) creator.createFromParcel(parcel);
+            } catch (RuntimeException e) {
+                throw new IOException("corrupt parcel: " + e.getMessage());
+            } finally {
+                parcel.recycle();
+            }
+        }
+    }
+
+    /**
+     * Streams the value straight between the bytes and the object, without a JSON tree. Java
+     * serialization, as written before the registry, is decoded too.
+     */
+    private static final class GsonCodec<T> implements CacheCodec<T> {
+        private final Gson gson;
+        private final TypeAdapter<T> adapter;
+        private final Class<?> rawType;
+
+        private GsonCodec(final Gson gson, final TypeAdapter<T> adapter, final Class<?> rawType) {
+            this.gson = gson;
+            this.adapter = adapter;
+            this.rawType = rawType;
+        }
+
+        @NonNull
+        @Override
+        public byte[] encode(@NonNull T value) throws IOException {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            JsonWriter writer = gson.newJsonWriter(new OutputStreamWriter(baos, UTF_8));
+            try {
+                adapter.write(writer, value);
+            } finally {
+                CloseUtils.closeIOQuietly(writer);
+            }
+            return baos.toByteArray();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public T decode(@NonNull byte[] bytes) throws IOException {
+            if (startsWith(bytes, SERIALIZATION_MAGIC)) {
+                Object value = SERIALIZABLE.decode(bytes);
+                if (!rawType.isInstance(value)) {
+                    throw new IOException(value.getClass().getName() + " isn't a " + rawType.getName());
+                }
+                return (T) value;
+            }
+            JsonReader reader = gson.newJsonReader(
+                    new InputStreamReader(new ByteArrayInputStream(bytes), UTF_8));
+            try {
+                return adapter.read(reader);
+            } catch (JsonParseException e) {
+                throw new IOException(e.getMessage());
+            } catch (IllegalStateException e) {
+                throw new IOException(e.getMessage());
+            } finally {
+                CloseUtils.closeIOQuietly(reader);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.jeff.jframework.tools.cache;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Compute the value of a key missing from a cache, see
+ * {@link LruMemoryCache#getOrLoad(String, CacheLoader)}.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public interface CacheLoader<T> {
+
+    /**
+     * Load the value of the key, called on one thread at a time per key and cache.
+     *
+     * @param key The key of cache.
+     * @return the value, or null to cache nothing
+     * @throws Exception if the value can't be loaded, nothing is cached then
+     */
+    T load(@NonNull String key) throws Exception;
+}
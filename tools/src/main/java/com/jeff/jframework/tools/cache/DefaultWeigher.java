@@ -0,0 +1,65 @@
+package com.jeff.jframework.tools.cache;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Build;
+import android.support.annotation.NonNull;
+
+/**
+ * The {@link Weigher} of weighed {@link LruMemoryCache}s unless one is given.
+ * <p>
+ * Weighs arrays, strings and bitmaps by their contents. Any other value weighs
+ * {@link #UNKNOWN_VALUE_WEIGHT}, override {@link #weighValue(Object)} to weigh app types and
+ * fall back to super for the rest.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public class DefaultWeigher implements Weigher {
+    /**
+     * The cache's own per entry objects: the linked map entry and the cached value holder.
+     */
+    protected static final int ENTRY_OVERHEAD = 64;
+    protected static final int OBJECT_HEADER = 16;
+    protected static final int UNKNOWN_VALUE_WEIGHT = 128;
+
+    @Override
+    public final int weigh(@NonNull final String key, @NonNull final Object value) {
+        long weight = ENTRY_OVERHEAD + weighString(key) + weighValue(value);
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Return the weight of the value, in bytes.
+     */
+    protected long weighValue(@NonNull final Object value) {
+        if (value instanceof byte[]) return OBJECT_HEADER + ((byte[]) value).length;
+        if (value instanceof String) return weighString((String) value);
+        if (value instanceof Bitmap) return weighBitmap((Bitmap) value);
+        if (value instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) value).getBitmap();
+            return OBJECT_HEADER + (bitmap == null ? 0 : weighBitmap(bitmap));
+        }
+        if (value instanceof char[]) return OBJECT_HEADER + 2L * ((char[]) value).length;
+        if (value instanceof int[]) return OBJECT_HEADER + 4L * ((int[]) value).length;
+        if (value instanceof long[]) return OBJECT_HEADER + 8L * ((long[]) value).length;
+        return UNKNOWN_VALUE_WEIGHT;
+    }
+
+    private static long weighString(final String string) {
+        // the String and its UTF-16 char array
+        return 2 * OBJECT_HEADER + 2L * string.length();
+    }
+
+    private static long weighBitmap(final Bitmap bitmap) {
+        if (bitmap.isRecycled()) return OBJECT_HEADER;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            // a reused bitmap may own more than its current size
+            return OBJECT_HEADER + bitmap.getAllocationByteCount();
+        }
+        return OBJECT_HEADER + bitmap.getByteCount();
+    }
+}
@@ -0,0 +1,255 @@
+package com.jeff.jframework.tools.cache;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Encodes and decodes the entries of {@link LruDiskCache}.
+ * <p>
+ * An entry is a fixed-width binary header, the key in UTF-8 and the payload:
+ * <pre>
+ *     offset  size  field
+ *     0       4     magic "LRUD"
+ *     4       1     version
+ *     5       1     flags, see {@link DiskCompression} and {@link PackStore}
+ *     6       2     key length
+ *     8       8     expiry, in epoch millis, -1 for never
+ *     16      4     payload length
+ *     20      4     CRC32 of the payload
+ *     24      n     key
+ *     24 + n  m     payload
+ * </pre>
+ * Entries written before the binary header existed (an optional "_#" key record and an
+ * optional "_$0123456789$_" due time in ASCII) are still decoded, see {@link #decodeLegacy}.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class DiskCacheHelper {
+    static final int HEADER_LEN = 24;
+    static final int MAGIC = 0x4C525544;
+    static final byte VERSION = 1;
+    static final long NO_EXPIRY = -1;
+    static final int MAX_KEY_LEN = 0xFFFF;
+
+    private static final int LEGACY_TIME_INFO_LEN = 14;
+    private static final int LEGACY_KEY_INFO_PREFIX_LEN = 4;
+    private static final int CHECKSUM_CHUNK = 8192;
+
+    private DiskCacheHelper() {
+    }
+
+    /**
+     * Return the expiry of an entry saved now.
+     *
+     * @param saveTime The save time of cache, in seconds, negative for never.
+     */
+    static long expiryOf(final int saveTime) {
+        return saveTime < 0 ? NO_EXPIRY : System.currentTimeMillis() + saveTime * 1000L;
+    }
+
+    /**
+     * Return the header and key of an entry, ready to be written in front of the payload.
+     */
+    static ByteBuffer newHeader(final byte[] keyBytes,
+                                final int flags,
+                                final long expiry,
+                                final byte[] payload) {
+        return newHeader(keyBytes, flags, expiry, payload.length,
+                checksum(payload, 0, payload.length));
+    }
+
+    /**
+     * Return the header and key of an entry whose payload has been streamed.
+     *
+     * @param payloadLength The length of the payload.
+     * @param checksum      The CRC32 of the payload.
+     */
+    static ByteBuffer newHeader(final byte[] keyBytes,
+                                final int flags,
+                                final long expiry,
+                                final int payloadLength,
+                                final int checksum) {
+        if (keyBytes.length > MAX_KEY_LEN) {
+            throw new IllegalArgumentException("key is longer than " + MAX_KEY_LEN + " bytes");
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LEN + keyBytes.length);
+        header.putInt(MAGIC)
+                .put(VERSION)
+                .put((byte) flags)
+                .putShort((short) keyBytes.length)
+                .putLong(expiry)
+                .putInt(payloadLength)
+                .putInt(checksum)
+                .put(keyBytes);
+        header.flip();
+        return header;
+    }
+
+    /**
+     * Read the header of an entry at the start of the channel.
+     *
+     * @return the header or null if the entry predates the binary header
+     * @throws IOException if the header is truncated or has an unknown version
+     */
+    static Header readHeader(final FileChannel fc) throws IOException {
+        if (fc.size() < HEADER_LEN) return null;
+        ByteBuffer fixed = ByteBuffer.allocate(HEADER_LEN);
+        readFully(fc, fixed, 0);
+        fixed.flip();
+        Header header = parseFixed(fixed);
+        if (header == null) return null;
+        readFully(fc, ByteBuffer.wrap(header.key), HEADER_LEN);
+        if (fc.size() < header.payloadOffset() + header.payloadLength) {
+            throw new EOFException("truncated entry");
+        }
+        return header;
+    }
+
+    /**
+     * Read the header of an entry at the position of the buffer, the position is moved
+     * to the start of the payload.
+     *
+     * @return the header or null if there is no entry at the position
+     * @throws IOException if the header is truncated or has an unknown version
+     */
+    static Header readHeader(final ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < HEADER_LEN) return null;
+        Header header = parseFixed(buffer);
+        if (header == null) return null;
+        if (buffer.remaining() < header.key.length + header.payloadLength) {
+            throw new EOFException("truncated entry");
+        }
+        buffer.get(header.key);
+        return header;
+    }
+
+    private static Header parseFixed(final ByteBuffer fixed) throws IOException {
+        int start = fixed.position();
+        if (fixed.getInt() != MAGIC) {
+            fixed.position(start);
+            return null;
+        }
+        byte version = fixed.get();
+        if (version != VERSION) throw new IOException("unknown entry version " + version);
+        Header header = new Header();
+        header.flags = fixed.get();
+        int keyLength = fixed.getShort() & 0xFFFF;
+        header.expiry = fixed.getLong();
+        header.payloadLength = fixed.getInt();
+        header.checksum = fixed.getInt();
+        if (header.payloadLength < 0) throw new IOException("negative payload length");
+        header.key = new byte[keyLength];
+        return header;
+    }
+
+    static void readFully(final FileChannel fc, final ByteBuffer dst, long position)
+            throws IOException {
+        while (dst.hasRemaining()) {
+            int read = fc.read(dst, position);
+            if (read < 0) throw new EOFException();
+            position += read;
+        }
+    }
+
+    static int checksum(final byte[] data, final int offset, final int length) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(data, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Return the CRC32 of the remaining bytes, without moving the position of the buffer.
+     */
+    static int checksum(final ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return checksum(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        // CRC32.update(ByteBuffer) needs API 26, walk direct and mapped buffers in chunks
+        CRC32 crc32 = new CRC32();
+        ByteBuffer view = buffer.duplicate();
+        byte[] chunk = new byte[Math.min(CHECKSUM_CHUNK, view.remaining())];
+        while (view.hasRemaining()) {
+            int length = Math.min(chunk.length, view.remaining());
+            view.get(chunk, 0, length);
+            crc32.update(chunk, 0, length);
+        }
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Decode an entry written before the binary header existed.
+     *
+     * @param keyBytes The key in UTF-8.
+     * @param data     The whole entry.
+     * @return the legacy entry or null if it belongs to another key
+     */
+    static Legacy decodeLegacy(final byte[] keyBytes, final byte[] data) {
+        int offset = 0;
+        if (data.length >= LEGACY_KEY_INFO_PREFIX_LEN && data[0] == '_' && data[1] == '#') {
+            int keyLength = ((data[2] & 0xFF) << 8) | (data[3] & 0xFF);
+            if (LEGACY_KEY_INFO_PREFIX_LEN + keyLength <= data.length) {
+                byte[] stored = Arrays.copyOfRange(data,
+                        LEGACY_KEY_INFO_PREFIX_LEN, LEGACY_KEY_INFO_PREFIX_LEN + keyLength);
+                if (!Arrays.equals(keyBytes, stored)) return null;
+                offset = LEGACY_KEY_INFO_PREFIX_LEN + keyLength;
+            }
+        }
+        Legacy legacy = new Legacy();
+        legacy.expiry = NO_EXPIRY;
+        if (hasLegacyTimeInfo(data, offset)) {
+            try {
+                legacy.expiry = Long.parseLong(new String(data, offset + 2, 10, "US-ASCII")) * 1000;
+            } catch (NumberFormatException ignored) {
+            } catch (IOException ignored) {
+            }
+            offset += LEGACY_TIME_INFO_LEN;
+        }
+        legacy.payload = offset == 0 ? data : Arrays.copyOfRange(data, offset, data.length);
+        return legacy;
+    }
+
+    private static boolean hasLegacyTimeInfo(final byte[] data, final int offset) {
+        return data.length >= offset + LEGACY_TIME_INFO_LEN
+                && data[offset] == '_'
+                && data[offset + 1] == '$'
+                && data[offset + 12] == '$'
+                && data[offset + 13] == '_';
+    }
+
+    static boolean isDue(final long expiry) {
+        return expiry != NO_EXPIRY && System.currentTimeMillis() > expiry;
+    }
+
+    static final class Header {
+        int flags;
+        byte[] key;
+        long expiry;
+        int payloadLength;
+        int checksum;
+
+        int payloadOffset() {
+            return HEADER_LEN + key.length;
+        }
+
+        boolean matchesKey(final byte[] keyBytes) {
+            return Arrays.equals(key, keyBytes);
+        }
+
+        boolean isDue() {
+            return DiskCacheHelper.isDue(expiry);
+        }
+    }
+
+    static final class Legacy {
+        long expiry;
+        byte[] payload;
+    }
+}
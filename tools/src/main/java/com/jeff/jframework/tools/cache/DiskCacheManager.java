@@ -0,0 +1,927 @@
+package com.jeff.jframework.tools.cache;
+
+import android.util.Log;
+
+import com.jeff.jframework.tools.ThreadUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index, size accounting and eviction of {@link LruDiskCache}.
+ * <p>
+ * Entries are indexed by name (see {@link DiskLayout#nameOf(String)}), an entry either
+ * has its own file or is a record in the {@link PackStore}.
+ *
+ * @author Jeff
+ * @describe
+ * @date 2018/11/13.
+ */
+final class DiskCacheManager {
+    private static final String TAG = "DiskCacheManager";
+    private static final int MIN_FILTER_CAPACITY = 1024;
+
+    private final AtomicLong cacheSize;
+    private final AtomicInteger cacheCount;
+    private final long sizeLimit;
+    private final int countLimit;
+    /**
+     * Access-ordered index, least recently used first. Guarded by itself.
+     */
+    private final LinkedHashMap<String, DiskJournal.Record> entries
+            = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * Entries which expire, soonest first. Guarded by entries, replaced and removed records
+     * are skipped once they come up.
+     */
+    private final PriorityQueue<Expiring> expiryQueue = new PriorityQueue<>();
+    private final DiskLayout layout;
+    private final PackStore packStore;
+    /**
+     * Count of indexed entries still in the legacy flat layout.
+     */
+    private final AtomicInteger legacyCount = new AtomicInteger();
+    /**
+     * The names in entries, updated under its lock. Only complete once the index is loaded.
+     */
+    private volatile KeyFilter keyFilter = new KeyFilter(MIN_FILTER_CAPACITY);
+    private volatile boolean keyFilterLoaded;
+    private final AtomicLong filterNegatives = new AtomicLong();
+    private final AtomicLong filterPositives = new AtomicLong();
+    private final AtomicLong filterFalsePositives = new AtomicLong();
+    private final DiskJournal journal;
+    private final ExecutorService executor;
+    private final AtomicBoolean compactPending = new AtomicBoolean();
+    private final AtomicBoolean packCompactPending = new AtomicBoolean();
+    private final Thread mThread;
+
+    DiskCacheManager(final File cacheDir, final long sizeLimit, final int countLimit) {
+        this.sizeLimit = sizeLimit;
+        this.countLimit = countLimit;
+        layout = new DiskLayout(cacheDir);
+        packStore = new PackStore(cacheDir);
+        cacheSize = new AtomicLong();
+        cacheCount = new AtomicInteger();
+        journal = new DiskJournal(cacheDir);
+        executor = new ThreadPoolExecutor(0, 1,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                ThreadUtils.createThreadFactory("lruDisk", Thread.MIN_PRIORITY));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                layout.clearTempFiles();
+                Map<String, DiskJournal.Record> records = journal.read();
+                if (records == null) {
+                    // journal missing or corrupt, fall back to scanning the directory once
+                    records = scanDirectory();
+                    synchronized (journal) {
+                        journal.compact(records);
+                    }
+                } else if (journal.needsCompaction(records.size())) {
+                    synchronized (journal) {
+                        journal.compact(records);
+                    }
+                }
+                long size = 0;
+                int legacy = 0;
+                synchronized (entries) {
+                    for (Map.Entry<String, DiskJournal.Record> entry : records.entrySet()) {
+                        DiskJournal.Record record = entry.getValue();
+                        size += record.size;
+                        if (record.isPacked()) {
+                            packStore.markLive(record.segment, record.size);
+                        } else if (DiskLayout.isLegacy(layout.fileOf(entry.getKey()))) {
+                            legacy++;
+                        }
+                        if (entries.put(entry.getKey(), record) == null) {
+                            keyFilter.add(entry.getKey());
+                        }
+                        if (record.expiry != DiskCacheHelper.NO_EXPIRY) {
+                            expiryQueue.add(new Expiring(entry.getKey(), record));
+                        }
+                    }
+                    legacyCount.getAndAdd(legacy);
+                    cacheSize.getAndAdd(size);
+                    cacheCount.getAndAdd(records.size());
+                    growKeyFilterIfNeeded();
+                }
+                keyFilterLoaded = true;
+                compactPackIfNeeded();
+            }
+        });
+        mThread.start();
+    }
+
+    private Map<String, DiskJournal.Record> scanDirectory() {
+        final List<Map.Entry<String, DiskJournal.Record>> records = new ArrayList<>();
+        Map<String, DiskJournal.Record> scanned = new LinkedHashMap<>(packStore.scan());
+        for (File cachedFile : layout.listEntryFiles()) {
+            scanned.put(cachedFile.getName(),
+                    new DiskJournal.Record(cachedFile.length(), cachedFile.lastModified()));
+        }
+        records.addAll(scanned.entrySet());
+        // the index is access-ordered, feed it the least recently used entries first
+        Collections.sort(records, new Comparator<Map.Entry<String, DiskJournal.Record>>() {
+            @Override
+            public int compare(Map.Entry<String, DiskJournal.Record> o1,
+                               Map.Entry<String, DiskJournal.Record> o2) {
+                long l1 = o1.getValue().lastUsage;
+                long l2 = o2.getValue().lastUsage;
+                return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+            }
+        });
+        Map<String, DiskJournal.Record> ordered = new LinkedHashMap<>();
+        for (Map.Entry<String, DiskJournal.Record> record : records) {
+            ordered.put(record.getKey(), record.getValue());
+        }
+        return ordered;
+    }
+
+    private void awaitLoaded() {
+        try {
+            mThread.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    long getCacheSize() {
+        awaitLoaded();
+        return cacheSize.get();
+    }
+
+    int getCacheCount() {
+        awaitLoaded();
+        return cacheCount.get();
+    }
+
+    File getFileBeforePut(final String key) {
+        awaitLoaded();
+        dropLegacy(key);
+        return layout.prepareFileOf(key);
+    }
+
+    /**
+     * The new entry supersedes the legacy one, if any.
+     */
+    private void dropLegacy(final String key) {
+        if (legacyCount.get() == 0) return;
+        File legacy = layout.legacyFileOf(key);
+        if (legacy.delete()) unlink(legacy.getName());
+    }
+
+    /**
+     * Create a temp file to stream a new entry into, rename it to
+     * {@link #getFileBeforePut(String)} once complete.
+     */
+    File newTempFile() throws IOException {
+        awaitLoaded();
+        return layout.newTempFile();
+    }
+
+    File getFileIfExists(final String key, final String name) {
+        // legacy entries are indexed by their legacy name, the filter can't tell them
+        boolean filtered = keyFilterLoaded && legacyCount.get() == 0;
+        if (filtered) {
+            if (!keyFilter.mightContain(name)) {
+                filterNegatives.incrementAndGet();
+                return null;
+            }
+            filterPositives.incrementAndGet();
+        }
+        File file = layout.fileOf(name);
+        if (file.exists()) return file;
+        if (filtered) filterFalsePositives.incrementAndGet();
+        if (legacyCount.get() > 0) return migrateLegacy(key, file);
+        return null;
+    }
+
+    KeyFilterStats getKeyFilterStats() {
+        return new KeyFilterStats(filterNegatives.get(), filterPositives.get(),
+                filterFalsePositives.get(), keyFilter.expectedFalsePositiveRate(cacheCount.get()));
+    }
+
+    /**
+     * Rebuild the filter twice as large once it holds more names than it was sized for.
+     * <p>Must hold the lock of entries.</p>
+     */
+    private void growKeyFilterIfNeeded() {
+        int count = entries.size();
+        if (count <= keyFilter.capacity()) return;
+        KeyFilter grown = new KeyFilter(Math.max(MIN_FILTER_CAPACITY, count * 2));
+        for (String name : entries.keySet()) {
+            grown.add(name);
+        }
+        keyFilter = grown;
+    }
+
+    /**
+     * Move the legacy flat entry of the key into the sharded layout.
+     *
+     * @return the migrated file or null if the key has no legacy entry
+     */
+    private File migrateLegacy(final String key, final File file) {
+        File legacy = layout.legacyFileOf(key);
+        // a concurrent reader may have just migrated it
+        if (!legacy.exists()) return file.exists() ? file : null;
+        File shard = file.getParentFile();
+        if (!shard.isDirectory()) shard.mkdirs();
+        if (!legacy.renameTo(file)) return legacy;
+        synchronized (journal) {
+            DiskJournal.Record record;
+            synchronized (entries) {
+                record = entries.remove(legacy.getName());
+                if (record != null) {
+                    legacyCount.addAndGet(-1);
+                    keyFilter.remove(legacy.getName());
+                    if (entries.put(file.getName(), record) == null) keyFilter.add(file.getName());
+                }
+            }
+            if (record != null) {
+                journal.appendRemove(legacy.getName());
+                journal.appendPut(file.getName(), record);
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Index an entry which has just been written to its own file.
+     */
+    void put(final String name, final long size, final long expiry) {
+        linkAll(Collections.singletonList(newFilePut(name, size, expiry)));
+    }
+
+    /**
+     * Append an entry to the {@link PackStore} and index it.
+     *
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    boolean putPacked(final String key,
+                      final ByteBuffer header,
+                      final byte[] payload,
+                      final long expiry) {
+        Put put = newPackedPut(key, header, payload, expiry);
+        putAll(Collections.singletonList(put));
+        return put.linked;
+    }
+
+    /**
+     * Return a put of an entry which has just been written to its own file, for
+     * {@link #putAll(List)}.
+     */
+    static Put newFilePut(final String name, final long size, final long expiry) {
+        DiskJournal.Record record = new DiskJournal.Record(size, System.currentTimeMillis());
+        record.expiry = expiry;
+        return new Put(name, record);
+    }
+
+    /**
+     * Return a put of an entry to append to the {@link PackStore}, for {@link #putAll(List)}.
+     */
+    static Put newPackedPut(final String key,
+                            final ByteBuffer header,
+                            final byte[] payload,
+                            final long expiry) {
+        DiskJournal.Record record = new DiskJournal.Record(
+                header.remaining() + payload.length, System.currentTimeMillis());
+        record.expiry = expiry;
+        Put put = new Put(DiskLayout.nameOf(key), record, header, ByteBuffer.wrap(payload));
+        put.key = key;
+        return put;
+    }
+
+    /**
+     * Index the puts under one lock, with one journal write and one eviction pass.
+     * <p>{@link Put#linked} tells whether each put succeeded.</p>
+     */
+    void putAll(final List<Put> puts) {
+        awaitLoaded();
+        for (Put put : puts) {
+            // puts of files dropped the legacy entry in getFileBeforePut
+            if (put.key != null) dropLegacy(put.key);
+        }
+        linkAll(puts);
+    }
+
+    /**
+     * Index the records, appending those which come with data to the {@link PackStore} first.
+     * <p>The append and the index update are atomic, so a segment compaction never copies
+     * a replaced record after its replacement. The journal's lock is held from the index
+     * update to the journal write, so puts and removes of a name are journaled in the order
+     * they are indexed.</p>
+     */
+    private void linkAll(final List<Put> puts) {
+        List<Map.Entry<String, DiskJournal.Record>> linked = new ArrayList<>(puts.size());
+        List<Map.Entry<String, DiskJournal.Record>> evicted;
+        List<String> files = new ArrayList<>();
+        synchronized (journal) {
+            synchronized (entries) {
+                for (Put put : puts) {
+                    DiskJournal.Record record = put.record;
+                    if (put.packed.length > 0) {
+                        try {
+                            packStore.append(record, put.packed);
+                        } catch (IOException e) {
+                            Log.w(TAG, "append to pack failed: " + e.getMessage());
+                            continue;
+                        }
+                    }
+                    DiskJournal.Record previous = entries.put(put.name, record);
+                    if (record.expiry != DiskCacheHelper.NO_EXPIRY) {
+                        expiryQueue.add(new Expiring(put.name, record));
+                    }
+                    if (previous != null) {
+                        previous.unlinked = true;
+                        cacheSize.addAndGet(record.size - previous.size);
+                    } else {
+                        cacheSize.addAndGet(record.size);
+                        cacheCount.addAndGet(1);
+                        keyFilter.add(put.name);
+                    }
+                    put.previous = previous;
+                    put.linked = true;
+                    linked.add(new AbstractMap.SimpleImmutableEntry<>(put.name, record));
+                }
+                evicted = trimToLimits(sizeLimit, countLimit);
+                growKeyFilterIfNeeded();
+            }
+            journal.appendPuts(linked);
+            List<String> evictedNames = new ArrayList<>(evicted.size());
+            for (Map.Entry<String, DiskJournal.Record> entry : evicted) {
+                release(entry.getKey(), entry.getValue(), files);
+                evictedNames.add(entry.getKey());
+            }
+            journal.appendRemoves(evictedNames);
+        }
+        for (Put put : puts) {
+            DiskJournal.Record previous = put.previous;
+            if (previous == null) continue;
+            if (previous.isPacked() != put.record.isPacked()) {
+                // the entry moved between its own file and the pack, drop the other copy
+                release(put.name, previous, files);
+            } else if (previous.isPacked()) {
+                packStore.markDead(previous.segment, previous.size);
+            }
+        }
+        deleteFiles(files);
+        compactIfNeeded();
+        compactPackIfNeeded();
+    }
+
+    /**
+     * Resolve the entries of the keys with one pass over the index, instead of a lock and
+     * a {@link File#exists()} per key.
+     *
+     * @return the entries which exist, packed records by segment and offset first, then
+     * files by path, so they are read in storage order
+     */
+    List<Lookup> lookupAll(final String[] keys) {
+        awaitLoaded();
+        List<Lookup> found = new ArrayList<>(keys.length);
+        List<Lookup> unknown = new ArrayList<>();
+        synchronized (entries) {
+            for (String key : keys) {
+                Lookup lookup = new Lookup(key, DiskLayout.nameOf(key));
+                DiskJournal.Record record = entries.get(lookup.name);
+                if (record == null) {
+                    unknown.add(lookup);
+                    continue;
+                }
+                if (record.isPacked()) {
+                    lookup.segment = record.segment;
+                    lookup.offset = record.offset;
+                    lookup.size = (int) record.size;
+                }
+                found.add(lookup);
+            }
+        }
+        Iterator<Lookup> it = found.iterator();
+        while (it.hasNext()) {
+            Lookup lookup = it.next();
+            if (lookup.segment >= 0) {
+                lookup.packed = packStore.view(lookup.segment, lookup.offset, lookup.size);
+                if (lookup.packed == null) it.remove();
+            } else {
+                lookup.file = layout.fileOf(lookup.name);
+            }
+        }
+        if (legacyCount.get() > 0) {
+            for (Lookup lookup : unknown) {
+                lookup.file = getFileIfExists(lookup.key, lookup.name);
+                if (lookup.file != null) found.add(lookup);
+            }
+        }
+        Collections.sort(found, new Comparator<Lookup>() {
+            @Override
+            public int compare(Lookup o1, Lookup o2) {
+                if ((o1.file == null) != (o2.file == null)) return o1.file == null ? -1 : 1;
+                if (o1.file != null) return o1.file.getPath().compareTo(o2.file.getPath());
+                if (o1.segment != o2.segment) return o1.segment < o2.segment ? -1 : 1;
+                return o1.offset < o2.offset ? -1 : (o1.offset == o2.offset ? 0 : 1);
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Return a view of the whole packed record of the entry.
+     *
+     * @return the view or null if the entry isn't packed
+     */
+    ByteBuffer getPacked(final String name) {
+        // packed entries are only known to the index, wait for it unless nothing is packed
+        if (!packStore.isEmpty()) awaitLoaded();
+        int segment;
+        int offset;
+        int size;
+        synchronized (entries) {
+            DiskJournal.Record record = entries.get(name);
+            if (record == null || !record.isPacked()) return null;
+            segment = record.segment;
+            offset = record.offset;
+            size = (int) record.size;
+        }
+        return packStore.view(segment, offset, size);
+    }
+
+    /**
+     * Return the expiry of the entry, see {@link DiskCacheHelper#expiryOf(int)}.
+     *
+     * @return the expiry or null if the entry isn't indexed
+     */
+    Long getExpiry(final String name) {
+        awaitLoaded();
+        synchronized (entries) {
+            DiskJournal.Record record = entries.get(name);
+            return record == null ? null : record.expiry;
+        }
+    }
+
+    void updateModify(final String name) {
+        // the journal keeps the usage order, no need to touch the file's mtime
+        long millis = System.currentTimeMillis();
+        synchronized (entries) {
+            DiskJournal.Record record = entries.get(name);
+            if (record == null) return;
+            record.lastUsage = millis;
+        }
+        journal.appendRead(name, millis);
+        compactIfNeeded();
+    }
+
+    /**
+     * {@link #updateModify(String)} the entries under one lock, with one journal write.
+     */
+    void updateModifyAll(final List<String> names) {
+        if (names.isEmpty()) return;
+        long millis = System.currentTimeMillis();
+        List<String> touched = new ArrayList<>(names.size());
+        synchronized (entries) {
+            for (String name : names) {
+                DiskJournal.Record record = entries.get(name);
+                if (record == null) continue;
+                record.lastUsage = millis;
+                touched.add(name);
+            }
+        }
+        journal.appendReads(touched, millis);
+        compactIfNeeded();
+    }
+
+    boolean removeByKey(final String key) {
+        awaitLoaded();
+        String name = DiskLayout.nameOf(key);
+        DiskJournal.Record record;
+        synchronized (entries) {
+            record = entries.get(name);
+        }
+        if (record != null && record.isPacked()) {
+            unlink(name);
+            return true;
+        }
+        File file = getFileIfExists(key, name);
+        if (file == null) return true;
+        if (!file.delete()) return false;
+        unlink(file.getName());
+        return true;
+    }
+
+    /**
+     * Remove the entries of the keys, deleting the files of all before unlinking all
+     * under one lock.
+     *
+     * @return whether each entry is gone, in the order of keys
+     */
+    boolean[] removeAllByKeys(final String[] keys) {
+        awaitLoaded();
+        boolean[] removed = new boolean[keys.length];
+        String[] names = new String[keys.length];
+        DiskJournal.Record[] records = new DiskJournal.Record[keys.length];
+        synchronized (entries) {
+            for (int i = 0; i < keys.length; i++) {
+                names[i] = DiskLayout.nameOf(keys[i]);
+                records[i] = entries.get(names[i]);
+            }
+        }
+        List<String> unlinked = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            File file;
+            if (records[i] == null) {
+                file = legacyCount.get() > 0 ? getFileIfExists(keys[i], names[i]) : null;
+            } else if (records[i].isPacked()) {
+                unlinked.add(names[i]);
+                removed[i] = true;
+                continue;
+            } else {
+                file = layout.fileOf(names[i]);
+            }
+            if (file == null) {
+                removed[i] = true;
+            } else if (file.delete() || !file.exists()) {
+                unlinked.add(file.getName());
+                removed[i] = true;
+            }
+        }
+        unlinkAll(unlinked);
+        return removed;
+    }
+
+    /**
+     * Drop the index entry and release its storage, a file must already be deleted.
+     */
+    private void unlink(final String name) {
+        unlinkAll(Collections.singletonList(name));
+    }
+
+    /**
+     * Drop the index entries under one lock and release their storage, files must already
+     * be deleted.
+     */
+    private void unlinkAll(final List<String> names) {
+        if (names.isEmpty()) return;
+        synchronized (journal) {
+            List<Map.Entry<String, DiskJournal.Record>> unlinked = new ArrayList<>(names.size());
+            synchronized (entries) {
+                for (String name : names) {
+                    DiskJournal.Record record = entries.remove(name);
+                    if (record == null) continue;
+                    keyFilter.remove(name);
+                    record.unlinked = true;
+                    cacheSize.addAndGet(-record.size);
+                    cacheCount.addAndGet(-1);
+                    if (!record.isPacked() && DiskLayout.isLegacy(layout.fileOf(name))) {
+                        legacyCount.addAndGet(-1);
+                    }
+                    unlinked.add(new AbstractMap.SimpleImmutableEntry<>(name, record));
+                }
+            }
+            if (unlinked.isEmpty()) return;
+            List<String> unlinkedNames = new ArrayList<>(unlinked.size());
+            for (Map.Entry<String, DiskJournal.Record> entry : unlinked) {
+                if (entry.getValue().isPacked()) {
+                    packStore.markDead(entry.getValue().segment, entry.getValue().size);
+                    packStore.appendTombstone(entry.getKey());
+                }
+                unlinkedNames.add(entry.getKey());
+            }
+            journal.appendRemoves(unlinkedNames);
+        }
+        compactIfNeeded();
+        compactPackIfNeeded();
+    }
+
+    /**
+     * Release the storage of an entry which is no longer indexed. A packed record is released
+     * at once, the name of a file is added to files, to be deleted by
+     * {@link #deleteFiles(List)} once the locks are released.
+     */
+    private void release(final String name, final DiskJournal.Record record,
+                         final List<String> files) {
+        if (record.isPacked()) {
+            packStore.markDead(record.segment, record.size);
+            packStore.appendTombstone(name);
+        } else {
+            files.add(name);
+        }
+    }
+
+    /**
+     * Delete the files of released entries. The names are checked against the index under
+     * its lock, the deletes run without any lock.
+     */
+    private void deleteFiles(final List<String> names) {
+        if (names.isEmpty()) return;
+        List<File> files = new ArrayList<>(names.size());
+        synchronized (entries) {
+            for (String name : names) {
+                // a put may have written a new file of the name since the record was unlinked
+                DiskJournal.Record current = entries.get(name);
+                if (current != null && !current.isPacked()) continue;
+                files.add(layout.fileOf(name));
+            }
+        }
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    boolean clear() {
+        awaitLoaded();
+        List<File> files = layout.listEntryFiles();
+        boolean flag = true;
+        for (File file : files) {
+            if (!file.delete()) {
+                flag = false;
+                continue;
+            }
+            synchronized (entries) {
+                DiskJournal.Record record = entries.remove(file.getName());
+                if (record != null) {
+                    keyFilter.remove(file.getName());
+                    record.unlinked = true;
+                    cacheSize.addAndGet(-record.size);
+                    cacheCount.addAndGet(-1);
+                }
+            }
+        }
+        synchronized (entries) {
+            Iterator<Map.Entry<String, DiskJournal.Record>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, DiskJournal.Record> entry = it.next();
+                DiskJournal.Record record = entry.getValue();
+                if (!record.isPacked()) continue;
+                keyFilter.remove(entry.getKey());
+                record.unlinked = true;
+                cacheSize.addAndGet(-record.size);
+                cacheCount.addAndGet(-1);
+                it.remove();
+            }
+            packStore.clear();
+        }
+        if (flag) {
+            synchronized (entries) {
+                for (DiskJournal.Record record : entries.values()) {
+                    record.unlinked = true;
+                }
+                entries.clear();
+                keyFilter.clear();
+                expiryQueue.clear();
+                cacheSize.set(0);
+                cacheCount.set(0);
+                legacyCount.set(0);
+            }
+        }
+        compact();
+        return flag;
+    }
+
+    /**
+     * Unlink the least recently used entries until the cache fits the limits.
+     * <p>Must hold the lock of entries, the storage is released later without it.</p>
+     *
+     * @param maxSize  The max size of cache, in bytes.
+     * @param maxCount The max count of cache.
+     * @return the evicted entries
+     */
+    private List<Map.Entry<String, DiskJournal.Record>> trimToLimits(final long maxSize,
+                                                                    final int maxCount) {
+        if (cacheCount.get() <= maxCount && cacheSize.get() <= maxSize) {
+            return Collections.emptyList();
+        }
+        List<Map.Entry<String, DiskJournal.Record>> evicted = new ArrayList<>();
+        Iterator<Map.Entry<String, DiskJournal.Record>> it = entries.entrySet().iterator();
+        while (it.hasNext() && (cacheCount.get() > maxCount || cacheSize.get() > maxSize)) {
+            Map.Entry<String, DiskJournal.Record> eldest = it.next();
+            DiskJournal.Record record = eldest.getValue();
+            evicted.add(new AbstractMap.SimpleImmutableEntry<>(eldest.getKey(), record));
+            it.remove();
+            keyFilter.remove(eldest.getKey());
+            record.unlinked = true;
+            cacheSize.addAndGet(-record.size);
+            cacheCount.addAndGet(-1);
+            if (!record.isPacked() && DiskLayout.isLegacy(layout.fileOf(eldest.getKey()))) {
+                legacyCount.addAndGet(-1);
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Remove the expired entries, a batch at a time.
+     */
+    SweepStats sweepExpired() {
+        awaitLoaded();
+        final long start = System.nanoTime();
+        int count = 0;
+        long bytes = 0;
+        List<Map.Entry<String, DiskJournal.Record>> expired = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        do {
+            expired.clear();
+            long now = System.currentTimeMillis();
+            synchronized (journal) {
+                synchronized (entries) {
+                    Expiring head;
+                    while (expired.size() < ExpirySweeper.SWEEP_BATCH
+                            && (head = expiryQueue.peek()) != null
+                            && head.record.expiry < now) {
+                        expiryQueue.poll();
+                        DiskJournal.Record record = head.record;
+                        if (record.unlinked || entries.remove(head.name) == null) continue;
+                        keyFilter.remove(head.name);
+                        record.unlinked = true;
+                        cacheSize.addAndGet(-record.size);
+                        cacheCount.addAndGet(-1);
+                        if (!record.isPacked() && DiskLayout.isLegacy(layout.fileOf(head.name))) {
+                            legacyCount.addAndGet(-1);
+                        }
+                        expired.add(new AbstractMap.SimpleImmutableEntry<>(head.name, record));
+                    }
+                    purgeExpiryQueueIfNeeded();
+                }
+                for (Map.Entry<String, DiskJournal.Record> entry : expired) {
+                    release(entry.getKey(), entry.getValue(), files);
+                    journal.appendRemove(entry.getKey());
+                    count++;
+                    bytes += entry.getValue().size;
+                }
+            }
+            deleteFiles(files);
+            files.clear();
+        } while (expired.size() == ExpirySweeper.SWEEP_BATCH);
+        if (count > 0) {
+            compactIfNeeded();
+            compactPackIfNeeded();
+        }
+        return new SweepStats(count, bytes, System.nanoTime() - start);
+    }
+
+    /**
+     * Drop replaced and removed records from the expiry queue once they dominate it.
+     * <p>Must hold the lock of entries.</p>
+     */
+    private void purgeExpiryQueueIfNeeded() {
+        if (expiryQueue.size() <= 2 * entries.size() + ExpirySweeper.SWEEP_BATCH) return;
+        Iterator<Expiring> it = expiryQueue.iterator();
+        while (it.hasNext()) {
+            if (it.next().record.unlinked) it.remove();
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (!journal.needsCompaction(cacheCount.get())) return;
+        if (!compactPending.compareAndSet(false, true)) return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                compactPending.set(false);
+                compact();
+            }
+        });
+    }
+
+    private void compact() {
+        // hold the journal so no record slips in between the snapshot and the rewrite
+        synchronized (journal) {
+            Map<String, DiskJournal.Record> records = new LinkedHashMap<>();
+            synchronized (entries) {
+                records.putAll(entries);
+            }
+            journal.compact(records);
+        }
+    }
+
+    private void compactPackIfNeeded() {
+        if (packStore.segmentsToCompact().isEmpty()) return;
+        if (!packCompactPending.compareAndSet(false, true)) return;
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                packCompactPending.set(false);
+                for (int segment : packStore.segmentsToCompact()) {
+                    compactSegment(segment);
+                }
+            }
+        });
+    }
+
+    /**
+     * Copy the live records of a segment to the active segment, then delete it.
+     */
+    private void compactSegment(final int segment) {
+        List<Map.Entry<String, DiskJournal.Record>> live = new ArrayList<>();
+        synchronized (entries) {
+            for (Map.Entry<String, DiskJournal.Record> entry : entries.entrySet()) {
+                if (entry.getValue().segment == segment) {
+                    live.add(new AbstractMap.SimpleImmutableEntry<>(
+                            entry.getKey(), entry.getValue()));
+                }
+            }
+        }
+        for (Map.Entry<String, DiskJournal.Record> entry : live) {
+            DiskJournal.Record record = entry.getValue();
+            ByteBuffer view = packStore.view(segment, record.offset, (int) record.size);
+            if (view == null) continue;
+            DiskJournal.Record moved = new DiskJournal.Record(record.size, 0);
+            // copy under the lock, a concurrent replace or remove then lands after the copy,
+            // and journal under the journal's lock, so its record lands after the copy's
+            synchronized (journal) {
+                synchronized (entries) {
+                    if (record.unlinked) continue;
+                    try {
+                        packStore.append(moved, view);
+                    } catch (IOException e) {
+                        Log.w(TAG, "compact segment failed: " + e.getMessage());
+                        return;
+                    }
+                    record.segment = moved.segment;
+                    record.offset = moved.offset;
+                }
+                journal.appendPut(entry.getKey(), record);
+            }
+        }
+        packStore.carryTombstones(segment);
+        packStore.deleteSegment(segment);
+    }
+
+    /**
+     * An entry to index by {@link #putAll(List)}.
+     */
+    static final class Put {
+        final String name;
+        final DiskJournal.Record record;
+        final ByteBuffer[] packed;
+        /**
+         * The key of a packed entry, whose legacy entry must be dropped.
+         */
+        String key;
+        DiskJournal.Record previous;
+        boolean linked;
+
+        private Put(final String name, final DiskJournal.Record record, final ByteBuffer... packed) {
+            this.name = name;
+            this.record = record;
+            this.packed = packed;
+        }
+    }
+
+    /**
+     * Where to read an entry from, resolved by {@link #lookupAll(String[])}.
+     */
+    static final class Lookup {
+        final String key;
+        final String name;
+        /**
+         * A view of the whole packed record, null unless the entry is packed.
+         */
+        ByteBuffer packed;
+        /**
+         * The file of the entry, null if the entry is packed.
+         */
+        File file;
+        int segment = -1;
+        int offset;
+        int size;
+
+        private Lookup(final String key, final String name) {
+            this.key = key;
+            this.name = name;
+        }
+    }
+
+    private static final class Expiring implements Comparable<Expiring> {
+        final String name;
+        final DiskJournal.Record record;
+
+        Expiring(final String name, final DiskJournal.Record record) {
+            this.name = name;
+            this.record = record;
+        }
+
+        @Override
+        public int compareTo(final Expiring o) {
+            long e1 = record.expiry;
+            long e2 = o.record.expiry;
+            return e1 < e2 ? -1 : (e1 == e2 ? 0 : 1);
+        }
+    }
+}
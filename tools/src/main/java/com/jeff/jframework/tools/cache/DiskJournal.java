@@ -0,0 +1,356 @@
+package com.jeff.jframework.tools.cache;
+
+import android.util.Log;
+
+import com.jeff.jframework.tools.CloseUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only journal of the {@link LruDiskCache} index.
+ * <p>
+ * Every put, read and remove is appended as one line, so the in-memory index can be
+ * rebuilt with a single sequential read instead of listing and stat-ing every cached file.
+ * When the journal has grown well past the number of live entries it is compacted into a
+ * snapshot holding one put record per live entry.
+ * <pre>
+ *     lruDisk.journal
+ *     2
+ *
+ *     P a94a8fe5ccb19ba61c4c0873d391e987982fbbd3 3401 1602236512000 -1
+ *     P 9b33046ed39d182e3adafa9045ad6787d4bbc321 187 1602236513000 1602240113000 4 81920
+ *     R a94a8fe5ccb19ba61c4c0873d391e987982fbbd3 1602236519000
+ *     D a94a8fe5ccb19ba61c4c0873d391e987982fbbd3
+ * </pre>
+ * A put record holds the size, the last usage and the expiry of the entry, the put record
+ * of an entry stored by {@link PackStore} ends with its segment and offset.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class DiskJournal {
+    private static final String TAG = "DiskJournal";
+
+    private static final String JOURNAL_FILE = ".journal";
+    private static final String JOURNAL_FILE_TMP = ".journal.tmp";
+    private static final String JOURNAL_FILE_BACKUP = ".journal.bkp";
+
+    private static final String MAGIC = "lruDisk.journal";
+    private static final String VERSION = "2";
+    /**
+     * Journals before expiries were recorded, read but never written.
+     */
+    private static final String VERSION_1 = "1";
+
+    private static final char PUT = 'P';
+    private static final char READ = 'R';
+    private static final char REMOVE = 'D';
+
+    /**
+     * The journal is compacted once it holds this many redundant records and at least
+     * as many redundant records as live entries.
+     */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    private final File journalFile;
+    private final File journalFileTmp;
+    private final File journalFileBackup;
+    private Writer writer;
+    private int redundantOpCount;
+
+    DiskJournal(final File directory) {
+        journalFile = new File(directory, JOURNAL_FILE);
+        journalFileTmp = new File(directory, JOURNAL_FILE_TMP);
+        journalFileBackup = new File(directory, JOURNAL_FILE_BACKUP);
+    }
+
+    /**
+     * Replay the journal.
+     *
+     * @return the live entries in journal order, or null if the journal is missing or corrupt
+     */
+    synchronized Map<String, Record> read() {
+        if (journalFileBackup.exists()) {
+            // a compaction was interrupted: prefer the journal if it made it, else the backup
+            if (journalFile.exists()) {
+                journalFileBackup.delete();
+            } else {
+                journalFileBackup.renameTo(journalFile);
+            }
+        }
+        if (!journalFile.exists()) return null;
+        Map<String, Record> records = new LinkedHashMap<>();
+        int lineCount = 0;
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(journalFile), 8192);
+            LineReader reader = new LineReader(in);
+            String magic = reader.readLine();
+            String version = reader.readLine();
+            String blank = reader.readLine();
+            if (!MAGIC.equals(magic) || !isKnownVersion(version) || !"".equals(blank)) {
+                Log.w(TAG, "unexpected journal header: " + journalFile);
+                return null;
+            }
+            final boolean hasExpiry = VERSION.equals(version);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!replay(line, hasExpiry, records)) {
+                    Log.w(TAG, "corrupt journal line: " + line);
+                    return null;
+                }
+                lineCount++;
+            }
+            if (reader.hasTornTail() || !hasExpiry) {
+                // the process died mid-append: the torn record is lost, rewrite a clean journal,
+                // an older version is rewritten as well before anything is appended to it
+                redundantOpCount = Integer.MAX_VALUE;
+            } else {
+                redundantOpCount = lineCount - records.size();
+            }
+            return records;
+        } catch (IOException e) {
+            Log.w(TAG, "read journal failed: " + e.getMessage());
+            return null;
+        } finally {
+            CloseUtils.closeIOQuietly(in);
+        }
+    }
+
+    private static boolean isKnownVersion(final String version) {
+        return VERSION.equals(version) || VERSION_1.equals(version);
+    }
+
+    private static boolean replay(final String line,
+                                  final boolean hasExpiry,
+                                  final Map<String, Record> records) {
+        String[] parts = line.split(" ");
+        if (parts.length < 2 || parts[0].length() != 1) return false;
+        try {
+            switch (parts[0].charAt(0)) {
+                case PUT:
+                    int fields = hasExpiry ? 5 : 4;
+                    if (parts.length != fields && parts.length != fields + 2) return false;
+                    Record put = new Record(Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+                    if (hasExpiry) put.expiry = Long.parseLong(parts[4]);
+                    if (parts.length == fields + 2) {
+                        put.segment = Integer.parseInt(parts[fields]);
+                        put.offset = Integer.parseInt(parts[fields + 1]);
+                    }
+                    records.remove(parts[1]);
+                    records.put(parts[1], put);
+                    return true;
+                case READ:
+                    if (parts.length != 3) return false;
+                    Record record = records.remove(parts[1]);
+                    if (record != null) {
+                        record.lastUsage = Long.parseLong(parts[2]);
+                        records.put(parts[1], record);
+                    }
+                    return true;
+                case REMOVE:
+                    if (parts.length != 2) return false;
+                    records.remove(parts[1]);
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    synchronized void appendPut(final String name, final Record record) {
+        append(putLine(name, record), true);
+    }
+
+    /**
+     * Append the puts with one write and one flush.
+     */
+    synchronized void appendPuts(final List<Map.Entry<String, Record>> puts) {
+        if (puts.isEmpty()) return;
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<String, Record> put : puts) {
+            lines.append(putLine(put.getKey(), put.getValue()));
+        }
+        append(lines.toString(), puts.size(), true);
+    }
+
+    private static String putLine(final String name, final Record record) {
+        String line = PUT + " " + name + " " + record.size + " " + record.lastUsage
+                + " " + record.expiry;
+        if (record.isPacked()) line += " " + record.segment + " " + record.offset;
+        return line + "\n";
+    }
+
+    synchronized void appendRead(final String name, final long lastUsage) {
+        // reads are frequent and cheap to lose, they ride along with the next flush
+        append(READ + " " + name + " " + lastUsage + "\n", false);
+    }
+
+    synchronized void appendReads(final Collection<String> names, final long lastUsage) {
+        if (names.isEmpty()) return;
+        StringBuilder lines = new StringBuilder();
+        for (String name : names) {
+            lines.append(READ).append(' ').append(name).append(' ').append(lastUsage).append('\n');
+        }
+        append(lines.toString(), names.size(), false);
+    }
+
+    synchronized void appendRemove(final String name) {
+        append(REMOVE + " " + name + "\n", true);
+    }
+
+    synchronized void appendRemoves(final Collection<String> names) {
+        if (names.isEmpty()) return;
+        StringBuilder lines = new StringBuilder();
+        for (String name : names) {
+            lines.append(REMOVE).append(' ').append(name).append('\n');
+        }
+        append(lines.toString(), names.size(), true);
+    }
+
+    private void append(final String record, final boolean flush) {
+        append(record, 1, flush);
+    }
+
+    private void append(final String records, final int count, final boolean flush) {
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(journalFile, true), US_ASCII), 8192);
+            }
+            writer.write(records);
+            if (flush) writer.flush();
+            redundantOpCount += count;
+        } catch (IOException e) {
+            Log.w(TAG, "append journal failed: " + e.getMessage());
+            CloseUtils.closeIOQuietly(writer);
+            writer = null;
+        }
+    }
+
+    /**
+     * Return whether the journal should be compacted.
+     *
+     * @param liveCount The count of live entries.
+     */
+    synchronized boolean needsCompaction(final int liveCount) {
+        return redundantOpCount >= REDUNDANT_OP_COMPACT_THRESHOLD
+                && redundantOpCount >= liveCount;
+    }
+
+    /**
+     * Replace the journal with a snapshot holding one put record per live entry.
+     *
+     * @param records The live entries, least recently used first.
+     */
+    synchronized void compact(final Map<String, Record> records) {
+        CloseUtils.closeIOQuietly(writer);
+        writer = null;
+        Writer tmp = null;
+        try {
+            tmp = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(journalFileTmp, false), US_ASCII), 8192);
+            tmp.write(MAGIC + "\n" + VERSION + "\n\n");
+            for (Map.Entry<String, Record> entry : records.entrySet()) {
+                tmp.write(putLine(entry.getKey(), entry.getValue()));
+            }
+            tmp.flush();
+            tmp.close();
+            tmp = null;
+            if (journalFile.exists()) {
+                journalFileBackup.delete();
+                if (!journalFile.renameTo(journalFileBackup)) {
+                    throw new IOException("can't back up " + journalFile);
+                }
+            }
+            if (!journalFileTmp.renameTo(journalFile)) {
+                throw new IOException("can't rename " + journalFileTmp);
+            }
+            journalFileBackup.delete();
+            redundantOpCount = 0;
+        } catch (IOException e) {
+            Log.w(TAG, "compact journal failed: " + e.getMessage());
+            journalFileTmp.delete();
+        } finally {
+            CloseUtils.closeIOQuietly(tmp);
+        }
+    }
+
+    /**
+     * An index entry as recorded in the journal.
+     */
+    static final class Record {
+        final long size;
+        long lastUsage;
+        /**
+         * The expiry of the entry, see {@link DiskCacheHelper#expiryOf(int)}.
+         */
+        long expiry = DiskCacheHelper.NO_EXPIRY;
+        /**
+         * The {@link PackStore} segment holding the entry, -1 if the entry has its own file.
+         */
+        int segment = -1;
+        int offset;
+        /**
+         * Whether the entry has been removed from the index, guarded by the index.
+         */
+        boolean unlinked;
+
+        Record(final long size, final long lastUsage) {
+            this.size = size;
+            this.lastUsage = lastUsage;
+        }
+
+        boolean isPacked() {
+            return segment >= 0;
+        }
+    }
+
+    /**
+     * Reads '\n' terminated ASCII lines, a trailing line without terminator is a torn append.
+     */
+    private static final class LineReader {
+        private final InputStream in;
+        private final StringBuilder sb = new StringBuilder(64);
+        private boolean tornTail;
+
+        LineReader(final InputStream in) {
+            this.in = in;
+        }
+
+        String readLine() throws IOException {
+            sb.setLength(0);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b == '\n') return sb.toString();
+                sb.append((char) b);
+            }
+            tornTail = sb.length() > 0;
+            return null;
+        }
+
+        boolean hasTornTail() {
+            return tornTail;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.jeff.jframework.tools.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * On-disk layout of the {@link LruDiskCache} entries.
+ * <p>
+ * An entry is named by the SHA-1 digest of its key and lives in a two-level fan-out of
+ * 16 x 256 sub directories, e.g. {@code cacheDir/a/94/a94a8fe5ccb19ba61c4c0873d391e987982fbbd3},
+ * so no directory grows past a few dozen files even with 100k+ entries.
+ * <p>
+ * Older caches stored every entry flat in the cache directory, named by {@code key.hashCode()}.
+ * Those legacy entries stay readable and are moved into the sharded layout on first access.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class DiskLayout {
+    private static final int DIGEST_NAME_LENGTH = 40;
+    private static final String TEMP_DIR = "tmp";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA1 = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final File directory;
+
+    DiskLayout(final File directory) {
+        this.directory = directory;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Return the name of the entry file of the key.
+     *
+     * @param key The key of cache.
+     * @return the hex SHA-1 digest of the key
+     */
+    static String nameOf(final String key) {
+        MessageDigest digest = SHA1.get();
+        digest.reset();
+        byte[] hash = digest.digest(keyBytes(key));
+        char[] chars = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0x0F];
+            chars[i * 2 + 1] = HEX_DIGITS[hash[i] & 0x0F];
+        }
+        return new String(chars);
+    }
+
+    static byte[] keyBytes(final String key) {
+        try {
+            return key.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Return the entry file of the name, either a digest name or a legacy flat name.
+     */
+    File fileOf(final String name) {
+        if (!isDigestName(name)) return new File(directory, name);
+        File shard = new File(new File(directory, name.substring(0, 1)), name.substring(1, 3));
+        return new File(shard, name);
+    }
+
+    /**
+     * Return the entry file of the key, creating its shard directory if needed.
+     */
+    File prepareFileOf(final String key) {
+        File file = fileOf(nameOf(key));
+        File shard = file.getParentFile();
+        if (!shard.isDirectory() && !shard.mkdirs() && !shard.isDirectory()) {
+            throw new RuntimeException("can't make dirs in " + shard.getAbsolutePath());
+        }
+        return file;
+    }
+
+    /**
+     * Return the file the key would have in the legacy flat layout.
+     */
+    File legacyFileOf(final String key) {
+        return new File(directory, String.valueOf(key.hashCode()));
+    }
+
+    /**
+     * Create an empty file to stream a new entry into, see {@link #clearTempFiles()}.
+     */
+    File newTempFile() throws IOException {
+        File tempDir = new File(directory, TEMP_DIR);
+        if (!tempDir.isDirectory() && !tempDir.mkdirs() && !tempDir.isDirectory()) {
+            throw new IOException("can't make dirs in " + tempDir.getAbsolutePath());
+        }
+        return File.createTempFile("entry", null, tempDir);
+    }
+
+    /**
+     * Delete the temp files left by streams which were never closed.
+     * <p>Only safe before any stream is opened.</p>
+     */
+    void clearTempFiles() {
+        File[] files = new File(directory, TEMP_DIR).listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            file.delete();
+        }
+    }
+
+    static boolean isLegacy(final File file) {
+        return isLegacyName(file.getName());
+    }
+
+    /**
+     * List every entry file of both layouts, skipping the journal and other bookkeeping files.
+     */
+    List<File> listEntryFiles() {
+        List<File> result = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files == null) return result;
+        for (File file : files) {
+            String name = file.getName();
+            if (file.isDirectory()) {
+                if (name.length() != 1 || !isHex(name)) continue;
+                File[] shards = file.listFiles();
+                if (shards == null) continue;
+                for (File shard : shards) {
+                    File[] entries = shard.listFiles();
+                    if (entries == null || shard.getName().length() != 2) continue;
+                    for (File entry : entries) {
+                        if (isDigestName(entry.getName())) result.add(entry);
+                    }
+                }
+            } else if (isLegacyName(name)) {
+                result.add(file);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isDigestName(final String name) {
+        return name.length() == DIGEST_NAME_LENGTH && isHex(name);
+    }
+
+    private static boolean isLegacyName(final String name) {
+        int len = name.length();
+        if (len == 0 || len > 11) return false;
+        for (int i = 0; i < len; i++) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && !(i == 0 && c == '-' && len > 1)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isHex(final String name) {
+        for (int i = 0, len = name.length(); i < len; i++) {
+            char c = name.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+}
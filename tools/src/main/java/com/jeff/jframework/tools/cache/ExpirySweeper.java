@@ -0,0 +1,87 @@
+package com.jeff.jframework.tools.cache;
+
+import android.util.Log;
+
+import com.jeff.jframework.tools.ThreadUtils;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically sweeps expired entries out of the caches.
+ * <p>
+ * Expired entries are otherwise only dropped when read, meanwhile they take size and count
+ * budget from live entries. Every cache sweeps on the same low priority thread.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class ExpirySweeper {
+    private static final String TAG = "ExpirySweeper";
+
+    /**
+     * The max count of entries removed under one lock acquisition.
+     */
+    static final int SWEEP_BATCH = 128;
+
+    interface Sweepable {
+        SweepStats sweepExpired();
+    }
+
+    private static ScheduledExecutorService sExecutor;
+
+    private final Sweepable sweepable;
+    private ScheduledFuture<?> future;
+    private volatile SweepStats lastStats = SweepStats.EMPTY;
+
+    ExpirySweeper(final Sweepable sweepable) {
+        this.sweepable = sweepable;
+    }
+
+    private static synchronized ScheduledExecutorService executor() {
+        if (sExecutor == null) {
+            sExecutor = new ScheduledThreadPoolExecutor(1,
+                    ThreadUtils.createThreadFactory("cacheSweeper", Thread.MIN_PRIORITY));
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Sweep every period, replacing the previous schedule.
+     */
+    synchronized void start(final long period, final TimeUnit unit) {
+        stop();
+        future = executor().scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (RuntimeException e) {
+                    // an exception would cancel the schedule
+                    Log.w(TAG, "sweep failed: " + e.getMessage());
+                }
+            }
+        }, period, period, unit);
+    }
+
+    synchronized void stop() {
+        if (future == null) return;
+        future.cancel(false);
+        future = null;
+    }
+
+    SweepStats sweep() {
+        SweepStats stats = sweepable.sweepExpired();
+        lastStats = stats;
+        return stats;
+    }
+
+    SweepStats getLastStats() {
+        return lastStats;
+    }
+}
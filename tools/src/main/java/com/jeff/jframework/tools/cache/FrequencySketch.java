@@ -0,0 +1,88 @@
+package com.jeff.jframework.tools.cache;
+
+/**
+ * A count-min sketch of how often keys were accessed recently, the popularity estimate of
+ * {@link TinyLfuStore}'s admission.
+ * <p>
+ * Four 4-bit counters per key, spread over a table of longs. Every counter is halved once
+ * the sketch has seen ten times its capacity in increments, so old popularity fades.
+ * Not thread safe.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    /**
+     * @param capacity The expected count of distinct keys.
+     */
+    FrequencySketch(final int capacity) {
+        int maximum = Math.max(16, Math.min(capacity, 1 << 24));
+        table = new long[Integer.highestOneBit(maximum - 1) << 1];
+        tableMask = table.length - 1;
+        sampleSize = 10 * maximum;
+    }
+
+    /**
+     * Return the estimated count of recent accesses, at most 15.
+     */
+    int frequency(final int hash) {
+        int start = (hash & 3) << 2;
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < 4; i++) {
+            int offset = (start + i) << 2;
+            int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(final int hash) {
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size == sampleSize) reset();
+    }
+
+    private boolean incrementAt(final int index, final int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) == mask) return false;
+        table[index] += 1L << offset;
+        return true;
+    }
+
+    /**
+     * Halve every counter.
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(final int hash, final int depth) {
+        long h = (hash + SEEDS[depth]) * SEEDS[depth];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+}
@@ -0,0 +1,103 @@
+package com.jeff.jframework.tools.cache;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A counting Bloom filter of the names indexed by {@link DiskCacheManager}, so a miss is
+ * answered without touching the filesystem.
+ * <p>
+ * Each name sets 7 of 10 4-bit counters per expected name, about 1% false positives at
+ * capacity. Counters are decremented on removal, a saturated counter stays saturated.
+ * Updates must be serialized by the caller, {@link #mightContain(String)} needs no lock.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class KeyFilter {
+    private static final int HASHES = 7;
+    private static final int COUNTERS_PER_NAME = 10;
+    private static final int MAX_COUNT = 15;
+
+    private final AtomicIntegerArray table;
+    private final int counterMask;
+    private final int capacity;
+
+    /**
+     * @param capacity The expected count of names.
+     */
+    KeyFilter(final int capacity) {
+        this.capacity = capacity;
+        long counters = Math.max(64, (long) capacity * COUNTERS_PER_NAME);
+        int size = (int) Math.min(1 << 30, Long.highestOneBit(counters - 1) << 1);
+        // 8 counters per int
+        table = new AtomicIntegerArray(size >>> 3);
+        counterMask = size - 1;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    void add(final String name) {
+        long hash = hash(name);
+        for (int i = 0; i < HASHES; i++) {
+            int index = indexOf(hash, i);
+            int word = table.get(index >>> 3);
+            int shift = (index & 7) << 2;
+            if (((word >>> shift) & 0xf) < MAX_COUNT) table.set(index >>> 3, word + (1 << shift));
+        }
+    }
+
+    void remove(final String name) {
+        long hash = hash(name);
+        for (int i = 0; i < HASHES; i++) {
+            int index = indexOf(hash, i);
+            int word = table.get(index >>> 3);
+            int shift = (index & 7) << 2;
+            int count = (word >>> shift) & 0xf;
+            // a saturated counter may count more names than it can tell
+            if (count > 0 && count < MAX_COUNT) table.set(index >>> 3, word - (1 << shift));
+        }
+    }
+
+    /**
+     * Return false if the name surely isn't added.
+     */
+    boolean mightContain(final String name) {
+        long hash = hash(name);
+        for (int i = 0; i < HASHES; i++) {
+            int index = indexOf(hash, i);
+            if (((table.get(index >>> 3) >>> ((index & 7) << 2)) & 0xf) == 0) return false;
+        }
+        return true;
+    }
+
+    void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, 0);
+        }
+    }
+
+    /**
+     * Return the expected false positive rate holding the count of names.
+     */
+    double expectedFalsePositiveRate(final int count) {
+        double counters = counterMask + 1.0;
+        return Math.pow(1 - Math.exp(-HASHES * count / counters), HASHES);
+    }
+
+    private static long hash(final String name) {
+        long h = name.hashCode() * 0x9e3779b97f4a7c15L;
+        return h ^ (h >>> 29);
+    }
+
+    private int indexOf(final long hash, final int i) {
+        // double hashing, the odd step visits distinct counters
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return (h1 + i * h2) & counterMask;
+    }
+}
@@ -0,0 +1,70 @@
+package com.jeff.jframework.tools.cache;
+
+import java.util.Locale;
+
+/**
+ * How the key filter of a {@link LruDiskCache} answered lookups of entries not in memory.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public final class KeyFilterStats {
+    private final long negatives;
+    private final long positives;
+    private final long falsePositives;
+    private final double expectedFalsePositiveRate;
+
+    KeyFilterStats(final long negatives, final long positives, final long falsePositives,
+                   final double expectedFalsePositiveRate) {
+        this.negatives = negatives;
+        this.positives = positives;
+        this.falsePositives = falsePositives;
+        this.expectedFalsePositiveRate = expectedFalsePositiveRate;
+    }
+
+    /**
+     * Return the count of misses answered without touching the filesystem.
+     */
+    public long getNegatives() {
+        return negatives;
+    }
+
+    /**
+     * Return the count of lookups let through to the filesystem.
+     */
+    public long getPositives() {
+        return positives;
+    }
+
+    /**
+     * Return the count of lookups let through which found nothing.
+     */
+    public long getFalsePositives() {
+        return falsePositives;
+    }
+
+    /**
+     * Return the share of misses let through to the filesystem.
+     */
+    public double getFalsePositiveRate() {
+        long misses = negatives + falsePositives;
+        return misses == 0 ? 0 : (double) falsePositives / misses;
+    }
+
+    /**
+     * Return the false positive rate expected of the filter at its current load.
+     */
+    public double getExpectedFalsePositiveRate() {
+        return expectedFalsePositiveRate;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "KeyFilterStats{negatives=%d, positives=%d, falsePositives=%d, fpRate=%.4f, expected=%.4f}",
+                negatives, positives, falsePositives, getFalsePositiveRate(), expectedFalsePositiveRate);
+    }
+}
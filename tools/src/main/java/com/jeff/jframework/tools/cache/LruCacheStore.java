@@ -0,0 +1,88 @@
+package com.jeff.jframework.tools.cache;
+
+import android.support.v4.util.LruCache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link MemoryStore} on {@link LruCache}, plain LRU under one lock.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class LruCacheStore implements MemoryStore {
+    private final LruCache<String, LruMemoryCache.CacheValue> cache;
+    private final AtomicInteger count = new AtomicInteger();
+
+    LruCacheStore(final int maxWeight, final RemovalListener listener) {
+        cache = new LruCache<String, LruMemoryCache.CacheValue>(maxWeight) {
+            @Override
+            protected int sizeOf(String key, LruMemoryCache.CacheValue value) {
+                return value.weight;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key,
+                                        LruMemoryCache.CacheValue oldValue,
+                                        LruMemoryCache.CacheValue newValue) {
+                if (newValue == null) count.decrementAndGet();
+                listener.onRemoved(oldValue);
+            }
+        };
+    }
+
+    @Override
+    public LruMemoryCache.CacheValue get(final String key) {
+        return cache.get(key);
+    }
+
+    @Override
+    public LruMemoryCache.CacheValue put(final String key, final LruMemoryCache.CacheValue value) {
+        LruMemoryCache.CacheValue previous = cache.put(key, value);
+        if (previous == null) count.incrementAndGet();
+        return previous;
+    }
+
+    @Override
+    public LruMemoryCache.CacheValue remove(final String key) {
+        return cache.remove(key);
+    }
+
+    @Override
+    public boolean remove(final String key, final LruMemoryCache.CacheValue value) {
+        // LruCache locks itself, hold it so the value can't be replaced in between
+        synchronized (cache) {
+            if (cache.get(key) != value) return false;
+            cache.remove(key);
+            return true;
+        }
+    }
+
+    @Override
+    public void clear() {
+        cache.evictAll();
+    }
+
+    @Override
+    public int count() {
+        return count.get();
+    }
+
+    @Override
+    public long weight() {
+        return cache.size();
+    }
+
+    @Override
+    public int maxEntryWeight() {
+        return cache.maxSize();
+    }
+
+    @Override
+    public void resize(final int maxWeight) {
+        cache.resize(maxWeight);
+    }
+}
@@ -1,40 +1,48 @@
 package com.jeff.jframework.tools.cache;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.PixelFormat;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.jeff.jframework.core.ContextUtils;
+import com.jeff.jframework.tools.CloseUtils;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 import java.nio.ByteBuffer;
-import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
-import java.util.Locale;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 /**
  * @author Jeff
@@ -42,16 +50,59 @@ import java.util.concurrent.atomic.AtomicLong;
  * @date 2018/11/13.
  */
 public class LruDiskCache {
+
+    @IntDef({Compression.NONE, Compression.LZF, Compression.DEFLATE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Compression {
+        /**
+         * Store values as they are
+         */
+        int NONE = 0;
+        /**
+         * Fast LZ compression, for values read often
+         */
+        int LZF = 1;
+        /**
+         * Deflate, smaller than LZF but several times slower
+         */
+        int DEFLATE = 2;
+    }
+
     /**
      * cache directory: /data/data/package/cache/DEFAULT_CACHE_DIR_NAME
      */
     private static final String DEFAULT_CACHE_DIR_NAME = "lruDisk";
     private static final long DEFAULT_MAX_SIZE = Long.MAX_VALUE;
+    /**
+     * Payloads at least this large are memory-mapped by {@link #getByteBuffer(String)}.
+     */
+    private static final int MMAP_THRESHOLD = 32 * 1024;
     private static final int DEFAULT_MAX_COUNT = Integer.MAX_VALUE;
+    /**
+     * The largest record {@link #setPackThreshold(int)} accepts.
+     */
+    private static final int MAX_PACK_THRESHOLD = PackStore.SEGMENT_SIZE / 4;
+    /**
+     * The max count of distinct keys waiting for the write-behind writer.
+     */
+    private static final int MAX_PENDING_WRITES = 1024;
+    /**
+     * The max count of files a batch put keeps open until it forces them to disk.
+     */
+    private static final int MAX_OPEN_FILES = 64;
 
     private static final ConcurrentHashMap<String, LruDiskCache> CACHE_MAP = new ConcurrentHashMap<>();
     private final String mCacheKey;
     private final DiskCacheManager mDiskCacheManager;
+    private volatile int mPackThreshold;
+    private final WriteBehindQueue mWriteBehind;
+    private volatile boolean mWriteBehindEnabled;
+    private volatile int mCompression = Compression.NONE;
+    private volatile int mCompressionThreshold;
+    private final ExpirySweeper mSweeper;
+    private volatile AdmissionPolicy mAdmissionPolicy;
+    private final AtomicLong mAdmitted = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
 
     /**
      * Return the single {@link LruDiskCache} instance.
@@ -151,6 +202,147 @@ public class LruDiskCache {
     private LruDiskCache(final String cacheKey, final DiskCacheManager cacheManager) {
         mCacheKey = cacheKey;
         mDiskCacheManager = cacheManager;
+        mWriteBehind = new WriteBehindQueue(new WriteBehindQueue.Sink() {
+            @Override
+            public void write(String key, byte[] value, long expiry) {
+                writeEntry(key, value, expiry);
+            }
+        }, MAX_PENDING_WRITES);
+        mSweeper = new ExpirySweeper(new ExpirySweeper.Sweepable() {
+            @Override
+            public SweepStats sweepExpired() {
+                return mDiskCacheManager.sweepExpired();
+            }
+        });
+    }
+
+    /**
+     * Store values up to the threshold in shared segment files instead of a file each.
+     * <p>Saves a file create, open and close per small entry, which dominates when caching
+     * many small responses. Disabled by default.</p>
+     *
+     * @param maxPackedSize The max size of a packed value, in bytes, 0 to disable.
+     */
+    public void setPackThreshold(final int maxPackedSize) {
+        mPackThreshold = Math.max(0, Math.min(maxPackedSize, MAX_PACK_THRESHOLD));
+    }
+
+    /**
+     * Compress values of at least the threshold size before writing them.
+     * <p>Only values which get smaller are stored compressed, the codec is recorded per
+     * entry so changing it keeps older entries readable. The size of cache counts the
+     * compressed bytes.</p>
+     *
+     * @param compression  The codec of new entries.
+     * @param minValueSize The min size of a value to compress, in bytes.
+     */
+    public void setCompression(@Compression final int compression, final int minValueSize) {
+        mCompressionThreshold = Math.max(1, minValueSize);
+        mCompression = compression;
+    }
+
+    /**
+     * Write only the puts the policy admits, see {@link AdmissionPolicies}.
+     * <p>A rejected put removes the value on disk of the key, so a stale value isn't read
+     * in place of the newer one. Puts of every kind and streams are asked, the
+     * {@link LruDoubleCache} over this cache and its write-backs included. All are admitted
+     * by default.</p>
+     *
+     * @param policy The policy, null to admit all.
+     */
+    public void setAdmissionPolicy(@Nullable final AdmissionPolicy policy) {
+        mAdmissionPolicy = policy;
+    }
+
+    /**
+     * Return how the admission policy answered the puts, since the cache was created.
+     *
+     * @return the stats of admission
+     */
+    public AdmissionStats getAdmissionStats() {
+        return new AdmissionStats(mAdmitted.get(), mRejected.get());
+    }
+
+    /**
+     * Periodically remove expired entries on a low priority thread, instead of only when
+     * they are read.
+     *
+     * @param period The period between sweeps.
+     * @param unit   The unit of period.
+     */
+    public void startExpirySweeper(final long period, @NonNull final TimeUnit unit) {
+        mSweeper.start(period, unit);
+    }
+
+    /**
+     * Stop the periodic sweep started by {@link #startExpirySweeper(long, TimeUnit)}.
+     */
+    public void stopExpirySweeper() {
+        mSweeper.stop();
+    }
+
+    /**
+     * Remove every expired entry now, on the caller's thread.
+     *
+     * @return the stats of the sweep
+     */
+    public SweepStats sweepExpired() {
+        return mSweeper.sweep();
+    }
+
+    /**
+     * Return the stats of the last sweep, periodic or not.
+     *
+     * @return the stats of the last sweep
+     */
+    public SweepStats getLastSweepStats() {
+        return mSweeper.getLastStats();
+    }
+
+    /**
+     * Write puts on a background writer thread instead of the caller's thread.
+     * <p>Pending puts to the same key collapse into one write, reads see pending values.
+     * Disabling it flushes the pending puts.</p>
+     *
+     * @param enabled {@code true}: write behind<br>{@code false}: write through
+     */
+    public void setWriteBehind(final boolean enabled) {
+        mWriteBehindEnabled = enabled;
+        if (!enabled) flush();
+    }
+
+    /**
+     * Return the save time left of the cache, in seconds.
+     *
+     * @return the seconds left, -1 if the cache doesn't expire, null if it doesn't exist
+     */
+    Integer getSaveTimeLeft(@NonNull final String key) {
+        WriteBehindQueue.Pending pending = mWriteBehind.get(key);
+        Long expiry = pending != null
+                ? pending.expiry : mDiskCacheManager.getExpiry(DiskLayout.nameOf(key));
+        if (expiry == null) return null;
+        if (expiry == DiskCacheHelper.NO_EXPIRY) return -1;
+        long left = (expiry - System.currentTimeMillis()) / 1000L;
+        return left > 0 ? (int) Math.min(left, Integer.MAX_VALUE) : null;
+    }
+
+    /**
+     * Write every pending put of the write-behind mode now, on the caller's thread.
+     */
+    public void flush() {
+        mWriteBehind.flush();
+    }
+
+    /**
+     * Wait until the write-behind writer has written every pending put.
+     *
+     * @param timeout The max time to wait.
+     * @param unit    The unit of timeout.
+     * @return {@code true}: every put is written<br>{@code false}: timed out
+     */
+    public boolean awaitQuiescence(final long timeout, @NonNull final TimeUnit unit)
+            throws InterruptedException {
+        return mWriteBehind.awaitQuiescence(timeout, unit);
     }
 
     @Override
@@ -196,62 +388,871 @@ public class LruDiskCache {
     }
 
     ///////////////////////////////////////////////////////////////////////////
-    // about bytes
+    // about codecs
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put value in cache, encoded by the codec of its type in {@link CacheCodecs}.
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param type     The type of value.
+     * @param saveTime The save time of cache, in seconds.
+     * @param <T>      The value type.
+     */
+    public <T> void put(@NonNull final String key, final T value,
+                        @NonNull final Class<T> type, final int saveTime) {
+        put(key, value, CacheCodecs.get(type), saveTime);
+    }
+
+    /**
+     * Put value in cache.
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param codec    The codec of value.
+     * @param saveTime The save time of cache, in seconds.
+     * @param <T>      The value type.
+     */
+    public <T> void put(@NonNull final String key, final T value,
+                        @NonNull final CacheCodec<T> codec, final int saveTime) {
+        if (value == null) return;
+        byte[] bytes;
+        try {
+            bytes = codec.encode(value);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        put(key, bytes, saveTime);
+    }
+
+    /**
+     * Return the value in cache, decoded by the codec of its type in {@link CacheCodecs}.
+     *
+     * @param key  The key of cache.
+     * @param type The type of value.
+     * @param <T>  The value type.
+     * @return the value if cache exists and decodes or null otherwise
+     */
+    public <T> T get(@NonNull final String key, @NonNull final Class<T> type) {
+        return get(key, CacheCodecs.get(type));
+    }
+
+    /**
+     * Return the value in cache.
+     *
+     * @param key   The key of cache.
+     * @param codec The codec of value.
+     * @param <T>   The value type.
+     * @return the value if cache exists and decodes or null otherwise
+     */
+    public <T> T get(@NonNull final String key, @NonNull final CacheCodec<T> codec) {
+        byte[] bytes = getBytes(key);
+        if (bytes == null) return null;
+        try {
+            return codec.decode(bytes);
+        } catch (IOException e) {
+            // written by another codec or an older version, drop it as a miss
+            e.printStackTrace();
+            remove(key);
+            return null;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about batch
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the bytes of the keys in cache.
+     * <p>All keys are resolved with one pass over the index and read in storage order,
+     * cheaper than a {@link #getBytes(String)} per key.</p>
+     *
+     * @param keys The keys of cache.
+     * @return the bytes of the keys whose cache exists, missing keys are absent
+     */
+    public Map<String, byte[]> getAllBytes(@NonNull final Collection<String> keys) {
+        Map<String, byte[]> values = new HashMap<>();
+        List<String> unresolved = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            WriteBehindQueue.Pending pending = mWriteBehind.get(key);
+            if (pending == null) {
+                unresolved.add(key);
+            } else if (!DiskCacheHelper.isDue(pending.expiry)) {
+                values.put(key, pending.value.clone());
+            }
+        }
+        if (unresolved.isEmpty()) return values;
+        List<DiskCacheManager.Lookup> lookups =
+                mDiskCacheManager.lookupAll(unresolved.toArray(new String[0]));
+        List<String> touched = new ArrayList<>(lookups.size());
+        for (DiskCacheManager.Lookup lookup : lookups) {
+            byte[] keyBytes = DiskLayout.keyBytes(lookup.key);
+            ByteBuffer payload;
+            if (lookup.packed != null) {
+                payload = readPackedPayload(lookup.key, lookup.name, keyBytes, lookup.packed);
+            } else {
+                payload = readFilePayload(lookup.key, keyBytes, lookup.file, false);
+            }
+            if (payload == null) continue;
+            values.put(lookup.key, bytesOf(payload));
+            touched.add(lookup.file != null ? lookup.file.getName() : lookup.name);
+        }
+        mDiskCacheManager.updateModifyAll(touched);
+        return values;
+    }
+
+    /**
+     * Return the values of the keys in cache, decoded by the codec of their type in
+     * {@link CacheCodecs}.
+     *
+     * @param keys The keys of cache.
+     * @param type The type of values.
+     * @param <T>  The value type.
+     * @return the values of the keys whose cache exists and decodes, missing keys are absent
+     */
+    public <T> Map<String, T> getAll(@NonNull final Collection<String> keys,
+                                     @NonNull final Class<T> type) {
+        return getAll(keys, CacheCodecs.get(type));
+    }
+
+    /**
+     * Return the values of the keys in cache.
+     *
+     * @param keys  The keys of cache.
+     * @param codec The codec of values.
+     * @param <T>   The value type.
+     * @return the values of the keys whose cache exists and decodes, missing keys are absent
+     */
+    public <T> Map<String, T> getAll(@NonNull final Collection<String> keys,
+                                     @NonNull final CacheCodec<T> codec) {
+        Map<String, T> values = new HashMap<>();
+        List<String> corrupt = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : getAllBytes(keys).entrySet()) {
+            try {
+                values.put(entry.getKey(), codec.decode(entry.getValue()));
+            } catch (IOException e) {
+                e.printStackTrace();
+                corrupt.add(entry.getKey());
+            }
+        }
+        if (!corrupt.isEmpty()) removeAll(corrupt);
+        return values;
+    }
+
+    /**
+     * Put the bytes in cache.
+     * <p>The files are forced to disk together once all are written, and the index,
+     * journal and eviction are updated once for all of them.</p>
+     *
+     * @param values   The values of cache by key.
+     * @param saveTime The save time of cache, in seconds.
+     * @return whether each value is put, by key
+     */
+    public Map<String, Boolean> putAllBytes(@NonNull final Map<String, byte[]> values,
+                                            final int saveTime) {
+        Map<String, Boolean> results = new HashMap<>();
+        long expiry = DiskCacheHelper.expiryOf(saveTime);
+        List<String> keys = new ArrayList<>(values.size());
+        List<EncodedEntry> entries = new ArrayList<>(values.size());
+        for (Map.Entry<String, byte[]> value : values.entrySet()) {
+            if (value.getValue() == null || !admit(value.getKey(), value.getValue().length)) {
+                results.put(value.getKey(), false);
+            } else if (mWriteBehindEnabled) {
+                mWriteBehind.put(value.getKey(), value.getValue().clone(), expiry);
+                results.put(value.getKey(), true);
+            } else {
+                keys.add(value.getKey());
+                entries.add(encodeEntry(value.getKey(), value.getValue(), expiry));
+            }
+        }
+        if (!keys.isEmpty()) writeEntries(keys, entries, expiry, results);
+        return results;
+    }
+
+    /**
+     * Put the values in cache, encoded by the codec of their type in {@link CacheCodecs}.
+     *
+     * @param values   The values of cache by key.
+     * @param type     The type of values.
+     * @param saveTime The save time of cache, in seconds.
+     * @param <T>      The value type.
+     * @return whether each value is put, by key
+     */
+    public <T> Map<String, Boolean> putAll(@NonNull final Map<String, T> values,
+                                           @NonNull final Class<T> type,
+                                           final int saveTime) {
+        return putAll(values, CacheCodecs.get(type), saveTime);
+    }
+
+    /**
+     * Put the values in cache.
+     *
+     * @param values   The values of cache by key.
+     * @param codec    The codec of values.
+     * @param saveTime The save time of cache, in seconds.
+     * @param <T>      The value type.
+     * @return whether each value is put, by key
+     */
+    public <T> Map<String, Boolean> putAll(@NonNull final Map<String, T> values,
+                                           @NonNull final CacheCodec<T> codec,
+                                           final int saveTime) {
+        Map<String, byte[]> encoded = new HashMap<>();
+        Map<String, Boolean> failed = new HashMap<>();
+        for (Map.Entry<String, T> value : values.entrySet()) {
+            if (value.getValue() == null) {
+                failed.put(value.getKey(), false);
+                continue;
+            }
+            try {
+                encoded.put(value.getKey(), codec.encode(value.getValue()));
+            } catch (IOException e) {
+                e.printStackTrace();
+                failed.put(value.getKey(), false);
+            }
+        }
+        Map<String, Boolean> results = putAllBytes(encoded, saveTime);
+        results.putAll(failed);
+        return results;
+    }
+
+    /**
+     * Remove the cache of the keys.
+     * <p>The index and journal are updated once for all of them.</p>
+     *
+     * @param keys The keys of cache.
+     * @return whether the cache of each key is gone, by key
+     */
+    public Map<String, Boolean> removeAll(@NonNull final Collection<String> keys) {
+        String[] array = keys.toArray(new String[0]);
+        for (String key : array) {
+            mWriteBehind.discard(key);
+        }
+        boolean[] removed = mDiskCacheManager.removeAllByKeys(array);
+        Map<String, Boolean> results = new HashMap<>();
+        for (int i = 0; i < array.length; i++) {
+            results.put(array[i], removed[i]);
+        }
+        return results;
+    }
+
+    private void writeEntries(final List<String> keys,
+                              final List<EncodedEntry> entries,
+                              final long expiry,
+                              final Map<String, Boolean> results) {
+        List<DiskCacheManager.Put> puts = new ArrayList<>(keys.size());
+        List<String> putKeys = new ArrayList<>(keys.size());
+        List<EncodedEntry> putEntries = new ArrayList<>(keys.size());
+        List<File> files = new ArrayList<>();
+        List<String> fileKeys = new ArrayList<>();
+        List<EncodedEntry> fileEntries = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            EncodedEntry entry = entries.get(i);
+            if (entry.payload.length <= mPackThreshold) {
+                puts.add(DiskCacheManager.newPackedPut(key, entry.header, entry.payload, expiry));
+                putKeys.add(key);
+                putEntries.add(entry);
+            } else {
+                files.add(mDiskCacheManager.getFileBeforePut(key));
+                fileKeys.add(key);
+                fileEntries.add(entry);
+            }
+        }
+        boolean[] written = writeEntries(files, fileEntries);
+        for (int i = 0; i < files.size(); i++) {
+            if (written[i]) {
+                puts.add(DiskCacheManager.newFilePut(
+                        files.get(i).getName(), fileEntries.get(i).size(), expiry));
+                putKeys.add(fileKeys.get(i));
+                putEntries.add(fileEntries.get(i));
+            } else {
+                results.put(fileKeys.get(i), false);
+            }
+        }
+        mDiskCacheManager.putAll(puts);
+        for (int i = 0; i < puts.size(); i++) {
+            DiskCacheManager.Put put = puts.get(i);
+            String key = putKeys.get(i);
+            if (!put.linked && put.packed.length > 0) {
+                // the pack rejected it, fall back to a file like a single put
+                File file = mDiskCacheManager.getFileBeforePut(key);
+                EncodedEntry entry = putEntries.get(i);
+                if (writeEntry(file, entry.header, entry.payload)) {
+                    mDiskCacheManager.put(file.getName(), entry.size(), expiry);
+                    results.put(key, true);
+                    continue;
+                }
+            }
+            results.put(key, put.linked);
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about bytes
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put bytes in cache.
+     *
+     * @param key   The key of cache.
+     * @param value The value of cache.
+     */
+    public void put(@NonNull final String key, final byte[] value) {
+        put(key, value, -1);
+    }
+
+    /**
+     * Put bytes in cache.
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public void put(@NonNull final String key, final byte[] value, final int saveTime) {
+        if (value == null || !admit(key, value.length)) return;
+        long expiry = DiskCacheHelper.expiryOf(saveTime);
+        if (mWriteBehindEnabled) {
+            // the caller may reuse its array once put returns
+            mWriteBehind.put(key, value.clone(), expiry);
+        } else {
+            writeEntry(key, value, expiry);
+        }
+    }
+
+    private boolean admit(final String key, final long size) {
+        AdmissionPolicy policy = mAdmissionPolicy;
+        if (policy == null) return true;
+        if (policy.admit(key, size)) {
+            mAdmitted.incrementAndGet();
+            return true;
+        }
+        mRejected.incrementAndGet();
+        remove(key);
+        return false;
+    }
+
+    private void writeEntry(final String key, final byte[] value, final long expiry) {
+        EncodedEntry entry = encodeEntry(key, value, expiry);
+        if (entry.payload.length <= mPackThreshold
+                && mDiskCacheManager.putPacked(key, entry.header, entry.payload, expiry)) {
+            return;
+        }
+        File file = mDiskCacheManager.getFileBeforePut(key);
+        if (!writeEntry(file, entry.header, entry.payload)) return;
+        mDiskCacheManager.put(file.getName(), entry.size(), expiry);
+    }
+
+    /**
+     * Compress the value if enabled and worth it, and prepend the header.
+     */
+    private EncodedEntry encodeEntry(final String key, final byte[] value, final long expiry) {
+        int compression = mCompression;
+        byte[] payload = null;
+        if (compression != Compression.NONE && value.length >= mCompressionThreshold) {
+            payload = DiskCompression.compress(compression, value);
+        }
+        int flags = 0;
+        if (payload == null) {
+            payload = value;
+        } else {
+            flags = DiskCompression.flagsOf(compression);
+        }
+        ByteBuffer header = DiskCacheHelper.newHeader(DiskLayout.keyBytes(key), flags, expiry, payload);
+        return new EncodedEntry(header, payload);
+    }
+
+    private static final class EncodedEntry {
+        final ByteBuffer header;
+        final byte[] payload;
+
+        EncodedEntry(final ByteBuffer header, final byte[] payload) {
+            this.header = header;
+            this.payload = payload;
+        }
+
+        long size() {
+            return header.capacity() + payload.length;
+        }
+    }
+
+    /**
+     * Return the bytes in cache.
+     *
+     * @param key The key of cache.
+     * @return the bytes if cache exists or null otherwise
+     */
+    public byte[] getBytes(@NonNull final String key) {
+        return getBytes(key, null);
+    }
+
+    /**
+     * Return the bytes in cache.
+     *
+     * @param key          The key of cache.
+     * @param defaultValue The default value if the cache doesn't exist.
+     * @return the bytes if cache exists or defaultValue otherwise
+     */
+    public byte[] getBytes(@NonNull final String key, final byte[] defaultValue) {
+        ByteBuffer payload = readPayload(key, false);
+        if (payload == null) return defaultValue;
+        return bytesOf(payload);
+    }
+
+    private static byte[] bytesOf(final ByteBuffer payload) {
+        if (payload.hasArray() && payload.arrayOffset() == 0
+                && payload.remaining() == payload.array().length) {
+            return payload.array();
+        }
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Return a read-only view of the bytes in cache, without copying them.
+     * <p>Small entries are read into a heap buffer, large ones are memory-mapped.</p>
+     *
+     * @param key The key of cache.
+     * @return the bytes if cache exists or null otherwise
+     */
+    public ByteBuffer getByteBuffer(@NonNull final String key) {
+        return getByteBuffer(key, null);
+    }
+
+    /**
+     * Return a read-only view of the bytes in cache, without copying them.
+     * <p>Small entries are read into a heap buffer, large ones are memory-mapped.</p>
+     *
+     * @param key          The key of cache.
+     * @param defaultValue The default value if the cache doesn't exist.
+     * @return the bytes if cache exists or defaultValue otherwise
+     */
+    public ByteBuffer getByteBuffer(@NonNull final String key, final ByteBuffer defaultValue) {
+        ByteBuffer payload = readPayload(key, true);
+        if (payload == null) return defaultValue;
+        return payload.asReadOnlyBuffer();
+    }
+
+    /**
+     * Read the payload of the entry.
+     *
+     * @param key      The key of cache.
+     * @param mappable Whether a large payload may be memory-mapped instead of read into a
+     *                 heap buffer wrapping exactly the payload.
+     * @return the payload or null if the entry doesn't exist, is due or is corrupt
+     */
+    private ByteBuffer readPayload(final String key, final boolean mappable) {
+        WriteBehindQueue.Pending pending = mWriteBehind.get(key);
+        if (pending != null) {
+            if (DiskCacheHelper.isDue(pending.expiry)) return null;
+            // read-only, so getBytes copies instead of handing out the queued array
+            return ByteBuffer.wrap(pending.value).asReadOnlyBuffer();
+        }
+        final String name = DiskLayout.nameOf(key);
+        final byte[] keyBytes = DiskLayout.keyBytes(key);
+        ByteBuffer record = mDiskCacheManager.getPacked(name);
+        if (record != null) {
+            ByteBuffer payload = readPackedPayload(key, name, keyBytes, record);
+            if (payload != null) mDiskCacheManager.updateModify(name);
+            return payload;
+        }
+        final File file = mDiskCacheManager.getFileIfExists(key, name);
+        if (file == null) return null;
+        ByteBuffer payload = readFilePayload(key, keyBytes, file, mappable);
+        if (payload != null) mDiskCacheManager.updateModify(file.getName());
+        return payload;
+    }
+
+    /**
+     * Read the payload of an entry which has its own file.
+     */
+    private ByteBuffer readFilePayload(final String key,
+                                       final byte[] keyBytes,
+                                       final File file,
+                                       final boolean mappable) {
+        FileChannel fc = null;
+        try {
+            fc = new RandomAccessFile(file, "r").getChannel();
+            DiskCacheHelper.Header header = DiskCacheHelper.readHeader(fc);
+            ByteBuffer payload;
+            long expiry;
+            if (header == null) {
+                byte[] data = new byte[(int) fc.size()];
+                DiskCacheHelper.readFully(fc, ByteBuffer.wrap(data), 0);
+                DiskCacheHelper.Legacy legacy = DiskCacheHelper.decodeLegacy(keyBytes, data);
+                if (legacy == null) return null;
+                expiry = legacy.expiry;
+                payload = ByteBuffer.wrap(legacy.payload);
+            } else {
+                if (!header.matchesKey(keyBytes)) return null;
+                expiry = header.expiry;
+                if (!DiskCacheHelper.isDue(expiry)) {
+                    int codec = DiskCompression.codecOf(header.flags);
+                    if (mappable && codec == Compression.NONE
+                            && header.payloadLength >= MMAP_THRESHOLD) {
+                        payload = fc.map(FileChannel.MapMode.READ_ONLY,
+                                header.payloadOffset(), header.payloadLength);
+                    } else {
+                        payload = ByteBuffer.allocate(header.payloadLength);
+                        DiskCacheHelper.readFully(fc, payload, header.payloadOffset());
+                        payload.flip();
+                    }
+                    if (DiskCacheHelper.checksum(payload) != header.checksum) {
+                        throw new IOException("checksum mismatch: " + file);
+                    }
+                    if (codec != Compression.NONE) {
+                        payload = ByteBuffer.wrap(DiskCompression.decompress(codec, payload));
+                    }
+                } else {
+                    payload = null;
+                }
+            }
+            if (DiskCacheHelper.isDue(expiry)) {
+                mDiskCacheManager.removeByKey(key);
+                return null;
+            }
+            return payload;
+        } catch (FileNotFoundException e) {
+            // removed since it was looked up
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            // a torn or corrupt entry is useless, drop it
+            mDiskCacheManager.removeByKey(key);
+            return null;
+        } finally {
+            CloseUtils.closeIOQuietly(fc);
+        }
+    }
+
+    /**
+     * Read the payload of a packed entry, the payload is a view of the mapped segment.
+     */
+    private ByteBuffer readPackedPayload(final String key,
+                                         final String name,
+                                         final byte[] keyBytes,
+                                         final ByteBuffer record) {
+        try {
+            DiskCacheHelper.Header header = DiskCacheHelper.readHeader(record);
+            if (header == null) throw new IOException("missing packed record: " + name);
+            if (!header.matchesKey(keyBytes)) return null;
+            if (header.isDue()) {
+                mDiskCacheManager.removeByKey(key);
+                return null;
+            }
+            ByteBuffer payload = record.slice();
+            payload.limit(header.payloadLength);
+            if (DiskCacheHelper.checksum(payload) != header.checksum) {
+                throw new IOException("checksum mismatch: " + name);
+            }
+            int codec = DiskCompression.codecOf(header.flags);
+            if (codec != Compression.NONE) {
+                payload = ByteBuffer.wrap(DiskCompression.decompress(codec, payload));
+            }
+            return payload;
+        } catch (IOException e) {
+            e.printStackTrace();
+            mDiskCacheManager.removeByKey(key);
+            return null;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about stream
     ///////////////////////////////////////////////////////////////////////////
 
     /**
-     * Put bytes in cache.
+     * Open a stream to put a value in cache without holding the whole value in memory.
+     * <p>The value is written to a temp file and replaces the cache only when the stream is
+     * closed. If a write fails the value is discarded on close.</p>
      *
-     * @param key   The key of cache.
-     * @param value The value of cache.
+     * @param key The key of cache.
+     * @return the stream, which must be closed
      */
-    public void put(@NonNull final String key, final byte[] value) {
-        put(key, value, -1);
+    public OutputStream openOutputStream(@NonNull final String key) throws IOException {
+        return openOutputStream(key, -1);
     }
 
     /**
-     * Put bytes in cache.
+     * Open a stream to put a value in cache without holding the whole value in memory.
+     * <p>The value is written to a temp file and replaces the cache only when the stream is
+     * closed. If a write fails the value is discarded on close.</p>
      *
      * @param key      The key of cache.
-     * @param value    The value of cache.
      * @param saveTime The save time of cache, in seconds.
+     * @return the stream, which must be closed
      */
-    public void put(@NonNull final String key, byte[] value, final int saveTime) {
-        if (value == null) return;
-        if (saveTime >= 0) value = DiskCacheHelper.newByteArrayWithTime(saveTime, value);
-        File file = mDiskCacheManager.getFileBeforePut(key);
-        writeFileFromBytes(file, value);
-        mDiskCacheManager.updateModify(file);
-        mDiskCacheManager.put(file);
+    public OutputStream openOutputStream(@NonNull final String key, final int saveTime)
+            throws IOException {
+        return new EntryOutputStream(key, DiskCacheHelper.expiryOf(saveTime),
+                mDiskCacheManager.newTempFile());
     }
 
     /**
-     * Return the bytes in cache.
+     * Open a stream to read a value in cache without holding the whole value in memory.
+     * <p>The checksum is verified once the stream reaches the end of the value, a corrupt
+     * value throws an {@link IOException} there and is dropped.</p>
      *
      * @param key The key of cache.
-     * @return the bytes if cache exists or null otherwise
+     * @return the stream, which must be closed, or null if the cache doesn't exist
      */
-    public byte[] getBytes(@NonNull final String key) {
-        return getBytes(key, null);
+    public InputStream openInputStream(@NonNull final String key) throws IOException {
+        final String name = DiskLayout.nameOf(key);
+        if (mWriteBehind.get(key) != null || mDiskCacheManager.getPacked(name) != null) {
+            // already in memory, stream the buffer
+            ByteBuffer payload = readPayload(key, true);
+            return payload == null ? null : new ByteBufferInputStream(payload);
+        }
+        final File file = mDiskCacheManager.getFileIfExists(key, name);
+        if (file == null) return null;
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            DiskCacheHelper.Header header = DiskCacheHelper.readHeader(fis.getChannel());
+            if (header == null || DiskCompression.codecOf(header.flags) != Compression.NONE) {
+                // legacy and compressed entries were put whole, read them whole
+                CloseUtils.closeIOQuietly(fis);
+                ByteBuffer payload = readPayload(key, false);
+                return payload == null ? null : new ByteBufferInputStream(payload);
+            }
+            if (!header.matchesKey(DiskLayout.keyBytes(key))) {
+                CloseUtils.closeIOQuietly(fis);
+                return null;
+            }
+            if (header.isDue()) {
+                CloseUtils.closeIOQuietly(fis);
+                mDiskCacheManager.removeByKey(key);
+                return null;
+            }
+            fis.getChannel().position(header.payloadOffset());
+            mDiskCacheManager.updateModify(name);
+            return new EntryInputStream(key, new BufferedInputStream(fis), header);
+        } catch (IOException e) {
+            CloseUtils.closeIOQuietly(fis);
+            mDiskCacheManager.removeByKey(key);
+            throw e;
+        }
     }
 
     /**
-     * Return the bytes in cache.
-     *
-     * @param key          The key of cache.
-     * @param defaultValue The default value if the cache doesn't exist.
-     * @return the bytes if cache exists or defaultValue otherwise
+     * Streams a new entry into a temp file and commits it on close.
      */
-    public byte[] getBytes(@NonNull final String key, final byte[] defaultValue) {
-        final File file = mDiskCacheManager.getFileIfExists(key);
-        if (file == null) return defaultValue;
-        byte[] data = readFile2Bytes(file);
-        if (DiskCacheHelper.isDue(data)) {
+    private final class EntryOutputStream extends OutputStream {
+        private final String key;
+        private final byte[] keyBytes;
+        private final long expiry;
+        private final File tempFile;
+        private final FileOutputStream fos;
+        private final OutputStream out;
+        private final CRC32 crc32 = new CRC32();
+        private long length;
+        private boolean failed;
+        private boolean closed;
+
+        private EntryOutputStream(final String key, final long expiry, final File tempFile)
+                throws IOException {
+            this.key = key;
+            this.keyBytes = DiskLayout.keyBytes(key);
+            this.expiry = expiry;
+            this.tempFile = tempFile;
+            fos = new FileOutputStream(tempFile);
+            try {
+                // room for the header, written once the length and checksum are known
+                fos.write(new byte[DiskCacheHelper.HEADER_LEN + keyBytes.length]);
+            } catch (IOException e) {
+                CloseUtils.closeIOQuietly(fos);
+                tempFile.delete();
+                throw e;
+            }
+            out = new BufferedOutputStream(fos);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+            crc32.update(b);
+            length++;
+        }
+
+        @Override
+        public void write(@NonNull final byte[] b, final int off, final int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+            crc32.update(b, off, len);
+            length += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                if (failed) throw new IOException("stream of " + key + " failed");
+                if (length > Integer.MAX_VALUE) throw new IOException("value too large");
+                out.flush();
+                FileChannel fc = fos.getChannel();
+                ByteBuffer header = DiskCacheHelper.newHeader(keyBytes, 0, expiry,
+                        (int) length, (int) crc32.getValue());
+                while (header.hasRemaining()) {
+                    fc.write(header, header.position());
+                }
+                fc.force(true);
+            } catch (IOException e) {
+                CloseUtils.closeIOQuietly(fos);
+                tempFile.delete();
+                throw e;
+            }
+            CloseUtils.closeIOQuietly(fos);
+            if (!admit(key, length)) {
+                tempFile.delete();
+                return;
+            }
+            // the streamed value supersedes a pending put
+            mWriteBehind.discard(key);
+            File file = mDiskCacheManager.getFileBeforePut(key);
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("can't rename " + tempFile + " to " + file);
+            }
+            mDiskCacheManager.put(file.getName(), file.length(), expiry);
+        }
+    }
+
+    /**
+     * Streams the payload of an entry, verifying its checksum at the end.
+     */
+    private final class EntryInputStream extends FilterInputStream {
+        private final String key;
+        private final int checksum;
+        private final CRC32 crc32 = new CRC32();
+        private long remaining;
+
+        private EntryInputStream(final String key,
+                                 final InputStream in,
+                                 final DiskCacheHelper.Header header) {
+            super(in);
+            this.key = key;
+            this.checksum = header.checksum;
+            this.remaining = header.payloadLength;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b < 0) throw truncated();
+            crc32.update(b);
+            consumed(1);
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) return 0;
+            if (remaining <= 0) return -1;
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read < 0) throw truncated();
+            crc32.update(b, off, read);
+            consumed(read);
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped bytes still count towards the checksum
+            byte[] buffer = new byte[(int) Math.min(8192, Math.max(n, 0))];
+            long skipped = 0;
+            while (skipped < n) {
+                int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+                if (read < 0) break;
+                skipped += read;
+            }
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void mark(final int readLimit) {
+        }
+
+        @Override
+        public void reset() throws IOException {
+            throw new IOException("mark/reset not supported");
+        }
+
+        private void consumed(final int count) throws IOException {
+            remaining -= count;
+            if (remaining == 0 && (int) crc32.getValue() != checksum) {
+                mDiskCacheManager.removeByKey(key);
+                throw new IOException("checksum mismatch: " + key);
+            }
+        }
+
+        private IOException truncated() {
             mDiskCacheManager.removeByKey(key);
-            return defaultValue;
+            return new EOFException("truncated entry: " + key);
+        }
+    }
+
+    /**
+     * Streams a buffer without copying it.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@NonNull final byte[] b, final int off, final int len) {
+            if (len == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(final long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
         }
-        mDiskCacheManager.updateModify(file);
-        return DiskCacheHelper.getDataWithoutDueTime(data);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -424,7 +1425,7 @@ public class LruDiskCache {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final Bitmap value, final int saveTime) {
-        put(key, bitmap2Bytes(value), saveTime);
+        put(key, value, CacheCodecs.get(Bitmap.class), saveTime);
     }
 
     /**
@@ -445,9 +1446,8 @@ public class LruDiskCache {
      * @return the bitmap if cache exists or defaultValue otherwise
      */
     public Bitmap getBitmap(@NonNull final String key, final Bitmap defaultValue) {
-        byte[] bytes = getBytes(key);
-        if (bytes == null) return defaultValue;
-        return bytes2Bitmap(bytes);
+        Bitmap value = get(key, CacheCodecs.get(Bitmap.class));
+        return value == null ? defaultValue : value;
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -472,7 +1472,7 @@ public class LruDiskCache {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final Drawable value, final int saveTime) {
-        put(key, drawable2Bytes(value), saveTime);
+        put(key, value, CacheCodecs.get(Drawable.class), saveTime);
     }
 
     /**
@@ -493,9 +1493,8 @@ public class LruDiskCache {
      * @return the drawable if cache exists or defaultValue otherwise
      */
     public Drawable getDrawable(@NonNull final String key, final Drawable defaultValue) {
-        byte[] bytes = getBytes(key);
-        if (bytes == null) return defaultValue;
-        return bytes2Drawable(bytes);
+        Drawable value = get(key, CacheCodecs.get(Drawable.class));
+        return value == null ? defaultValue : value;
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -575,7 +1574,7 @@ public class LruDiskCache {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final Serializable value, final int saveTime) {
-        put(key, serializable2Bytes(value), saveTime);
+        put(key, value, CacheCodecs.serializable(), saveTime);
     }
 
     /**
@@ -590,6 +1589,8 @@ public class LruDiskCache {
 
     /**
      * Return the serializable in cache.
+     * <p>Values written by {@link #put(String, Object, Class, int)} as JSON can't be read
+     * here, read them with {@link #get(String, Class)}, which also reads serializables.</p>
      *
      * @param key          The key of cache.
      * @param defaultValue The default value if the cache doesn't exist.
@@ -598,11 +1599,16 @@ public class LruDiskCache {
     public Object getSerializable(@NonNull final String key, final Object defaultValue) {
         byte[] bytes = getBytes(key);
         if (bytes == null) return defaultValue;
-        return bytes2Object(getBytes(key));
+        try {
+            return CacheCodecs.serializable().decode(bytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
     }
 
     /**
-     * Return the size of cache, in bytes.
+     * Return the size of cache, in bytes, compressed entries count their compressed size.
      *
      * @return the size of cache, in bytes
      */
@@ -619,6 +1625,16 @@ public class LruDiskCache {
         return mDiskCacheManager.getCacheCount();
     }
 
+    /**
+     * Return how the in-memory filter of the keys on disk answered lookups. Once the index is
+     * loaded, a miss it rules out costs no filesystem call.
+     *
+     * @return the stats of the key filter
+     */
+    public KeyFilterStats getKeyFilterStats() {
+        return mDiskCacheManager.getKeyFilterStats();
+    }
+
     /**
      * Remove the cache by key.
      *
@@ -626,6 +1642,7 @@ public class LruDiskCache {
      * @return {@code true}: success<br>{@code false}: fail
      */
     public boolean remove(@NonNull final String key) {
+        mWriteBehind.discard(key);
         return mDiskCacheManager.removeByKey(key);
     }
 
@@ -635,220 +1652,10 @@ public class LruDiskCache {
      * @return {@code true}: success<br>{@code false}: fail
      */
     public boolean clear() {
+        mWriteBehind.discardAll();
         return mDiskCacheManager.clear();
     }
 
-    private static final class DiskCacheManager {
-        private final AtomicLong cacheSize;
-        private final AtomicInteger cacheCount;
-        private final long sizeLimit;
-        private final int countLimit;
-        private final Map<File, Long> lastUsageDates
-                = Collections.synchronizedMap(new HashMap<File, Long>());
-        private final File cacheDir;
-        private final Thread mThread;
-
-        private DiskCacheManager(final File cacheDir, final long sizeLimit, final int countLimit) {
-            this.cacheDir = cacheDir;
-            this.sizeLimit = sizeLimit;
-            this.countLimit = countLimit;
-            cacheSize = new AtomicLong();
-            cacheCount = new AtomicInteger();
-            mThread = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    int size = 0;
-                    int count = 0;
-                    final File[] cachedFiles = cacheDir.listFiles();
-                    if (cachedFiles != null) {
-                        for (File cachedFile : cachedFiles) {
-                            size += cachedFile.length();
-                            count += 1;
-                            lastUsageDates.put(cachedFile, cachedFile.lastModified());
-                        }
-                        cacheSize.getAndAdd(size);
-                        cacheCount.getAndAdd(count);
-                    }
-                }
-            });
-            mThread.start();
-        }
-
-        private long getCacheSize() {
-            try {
-                mThread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            return cacheSize.get();
-        }
-
-        private int getCacheCount() {
-            try {
-                mThread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            return cacheCount.get();
-        }
-
-        private File getFileBeforePut(final String key) {
-            File file = new File(cacheDir, String.valueOf(key.hashCode()));
-            if (file.exists()) {
-                cacheCount.addAndGet(-1);
-                cacheSize.addAndGet(-file.length());
-            }
-            return file;
-        }
-
-        private File getFileIfExists(final String key) {
-            File file = new File(cacheDir, String.valueOf(key.hashCode()));
-            if (!file.exists()) return null;
-            return file;
-        }
-
-        private void put(final File file) {
-            cacheCount.addAndGet(1);
-            cacheSize.addAndGet(file.length());
-            while (cacheCount.get() > countLimit || cacheSize.get() > sizeLimit) {
-                cacheSize.addAndGet(-removeOldest());
-                cacheCount.addAndGet(-1);
-            }
-        }
-
-        private void updateModify(final File file) {
-            Long millis = System.currentTimeMillis();
-            file.setLastModified(millis);
-            lastUsageDates.put(file, millis);
-        }
-
-        private boolean removeByKey(final String key) {
-            File file = getFileIfExists(key);
-            if (file == null) return true;
-            if (!file.delete()) return false;
-            cacheSize.addAndGet(-file.length());
-            cacheCount.addAndGet(-1);
-            lastUsageDates.remove(file);
-            return true;
-        }
-
-        private boolean clear() {
-            File[] files = cacheDir.listFiles();
-            if (files == null || files.length <= 0) return true;
-            boolean flag = true;
-            for (File file : files) {
-                if (!file.delete()) {
-                    flag = false;
-                    continue;
-                }
-                cacheSize.addAndGet(-file.length());
-                cacheCount.addAndGet(-1);
-                lastUsageDates.remove(file);
-            }
-            if (flag) {
-                lastUsageDates.clear();
-                cacheSize.set(0);
-                cacheCount.set(0);
-            }
-            return flag;
-        }
-
-        /**
-         * Remove the oldest files.
-         *
-         * @return the size of oldest files, in bytes
-         */
-        private long removeOldest() {
-            if (lastUsageDates.isEmpty()) return 0;
-            Long oldestUsage = Long.MAX_VALUE;
-            File oldestFile = null;
-            Set<Map.Entry<File, Long>> entries = lastUsageDates.entrySet();
-            synchronized (lastUsageDates) {
-                for (Map.Entry<File, Long> entry : entries) {
-                    Long lastValueUsage = entry.getValue();
-                    if (lastValueUsage < oldestUsage) {
-                        oldestUsage = lastValueUsage;
-                        oldestFile = entry.getKey();
-                    }
-                }
-            }
-            if (oldestFile == null) return 0;
-            long fileSize = oldestFile.length();
-            if (oldestFile.delete()) {
-                lastUsageDates.remove(oldestFile);
-                return fileSize;
-            }
-            return 0;
-        }
-    }
-
-    private static final class DiskCacheHelper {
-
-        static final int TIME_INFO_LEN = 14;
-
-        private static byte[] newByteArrayWithTime(final int second, final byte[] data) {
-            byte[] time = createDueTime(second).getBytes();
-            byte[] content = new byte[time.length + data.length];
-            System.arraycopy(time, 0, content, 0, time.length);
-            System.arraycopy(data, 0, content, time.length, data.length);
-            return content;
-        }
-
-        /**
-         * Return the string of due time.
-         *
-         * @param seconds The seconds.
-         * @return the string of due time
-         */
-        private static String createDueTime(final int seconds) {
-            return String.format(
-                    Locale.getDefault(), "_$%010d$_",
-                    System.currentTimeMillis() / 1000 + seconds
-            );
-        }
-
-        private static boolean isDue(final byte[] data) {
-            long millis = getDueTime(data);
-            return millis != -1 && System.currentTimeMillis() > millis;
-        }
-
-        private static long getDueTime(final byte[] data) {
-            if (hasTimeInfo(data)) {
-                String millis = new String(copyOfRange(data, 2, 12));
-                try {
-                    return Long.parseLong(millis) * 1000;
-                } catch (NumberFormatException e) {
-                    return -1;
-                }
-            }
-            return -1;
-        }
-
-        private static byte[] getDataWithoutDueTime(final byte[] data) {
-            if (hasTimeInfo(data)) {
-                return copyOfRange(data, TIME_INFO_LEN, data.length);
-            }
-            return data;
-        }
-
-        private static byte[] copyOfRange(final byte[] original, final int from, final int to) {
-            int newLength = to - from;
-            if (newLength < 0) throw new IllegalArgumentException(from + " > " + to);
-            byte[] copy = new byte[newLength];
-            System.arraycopy(original, from, copy, 0, Math.min(original.length - from, newLength));
-            return copy;
-        }
-
-        private static boolean hasTimeInfo(final byte[] data) {
-            return data != null
-                    && data.length >= TIME_INFO_LEN
-                    && data[0] == '_'
-                    && data[1] == '$'
-                    && data[12] == '$'
-                    && data[13] == '_';
-        }
-    }
-
     ///////////////////////////////////////////////////////////////////////////
     // other utils methods
     ///////////////////////////////////////////////////////////////////////////
@@ -913,70 +1720,7 @@ public class LruDiskCache {
         return result;
     }
 
-    private static byte[] serializable2Bytes(final Serializable serializable) {
-        if (serializable == null) return null;
-        ByteArrayOutputStream baos;
-        ObjectOutputStream oos = null;
-        try {
-            oos = new ObjectOutputStream(baos = new ByteArrayOutputStream());
-            oos.writeObject(serializable);
-            return baos.toByteArray();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            try {
-                if (oos != null) {
-                    oos.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    private static Object bytes2Object(final byte[] bytes) {
-        if (bytes == null) return null;
-        ObjectInputStream ois = null;
-        try {
-            ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
-            return ois.readObject();
-        } catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            try {
-                if (ois != null) {
-                    ois.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-    }
-
-    private static byte[] bitmap2Bytes(final Bitmap bitmap) {
-        if (bitmap == null) return null;
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, baos);
-        return baos.toByteArray();
-    }
-
-    private static Bitmap bytes2Bitmap(final byte[] bytes) {
-        return (bytes == null || bytes.length <= 0)
-                ? null
-                : BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-    }
-
-    private static byte[] drawable2Bytes(final Drawable drawable) {
-        return drawable == null ? null : bitmap2Bytes(drawable2Bitmap(drawable));
-    }
-
-    private static Drawable bytes2Drawable(final byte[] bytes) {
-        return bytes == null ? null : bitmap2Drawable(bytes2Bitmap(bytes));
-    }
-
-    private static Bitmap drawable2Bitmap(final Drawable drawable) {
+    static Bitmap drawable2Bitmap(final Drawable drawable) {
         if (drawable instanceof BitmapDrawable) {
             BitmapDrawable bitmapDrawable = (BitmapDrawable) drawable;
             if (bitmapDrawable.getBitmap() != null) {
@@ -1007,53 +1751,97 @@ public class LruDiskCache {
         return bitmap;
     }
 
-    private static Drawable bitmap2Drawable(final Bitmap bitmap) {
+    static Drawable bitmap2Drawable(final Bitmap bitmap) {
         return bitmap == null
                 ? null
                 : new BitmapDrawable(ContextUtils.getContext().getResources(), bitmap);
     }
 
 
-    private static void writeFileFromBytes(final File file, final byte[] bytes) {
+    /**
+     * Write the header and the payload with one gathering write to a temp file, then rename
+     * it to the file. The file is never rewritten in place, a reader holding a mapping of it
+     * keeps the old contents.
+     *
+     * @return {@code true}: success<br>{@code false}: fail
+     */
+    private boolean writeEntry(final File file, final ByteBuffer header, final byte[] payload) {
         FileChannel fc = null;
+        File tempFile = null;
         try {
-            fc = new FileOutputStream(file, false).getChannel();
-            fc.write(ByteBuffer.wrap(bytes));
+            tempFile = mDiskCacheManager.newTempFile();
+            fc = new FileOutputStream(tempFile).getChannel();
+            ByteBuffer[] buffers = {header.duplicate(), ByteBuffer.wrap(payload)};
+            while (buffers[1].hasRemaining()) {
+                fc.write(buffers);
+            }
             fc.force(true);
         } catch (IOException e) {
             e.printStackTrace();
+            if (tempFile != null) tempFile.delete();
+            return false;
         } finally {
-            try {
-                if (fc != null) {
-                    fc.close();
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            CloseUtils.closeIOQuietly(fc);
         }
+        return renameEntry(tempFile, file);
     }
 
-    private static byte[] readFile2Bytes(final File file) {
-        FileChannel fc = null;
-        try {
-            fc = new RandomAccessFile(file, "r").getChannel();
-            int size = (int) fc.size();
-            MappedByteBuffer mbb = fc.map(FileChannel.MapMode.READ_ONLY, 0, size).load();
-            byte[] data = new byte[size];
-            mbb.get(data, 0, size);
-            return data;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return null;
-        } finally {
-            try {
-                if (fc != null) {
-                    fc.close();
+    private static boolean renameEntry(final File tempFile, final File file) {
+        if (tempFile.renameTo(file)) return true;
+        tempFile.delete();
+        return false;
+    }
+
+    /**
+     * Write the entries to temp files, forcing the files to disk only once a batch is
+     * written so the file system commits them together, then rename them to their files.
+     *
+     * @return whether each entry is written
+     */
+    private boolean[] writeEntries(final List<File> files, final List<EncodedEntry> entries) {
+        boolean[] written = new boolean[files.size()];
+        FileChannel[] channels = new FileChannel[Math.min(files.size(), MAX_OPEN_FILES)];
+        File[] tempFiles = new File[channels.length];
+        for (int from = 0; from < files.size(); from += channels.length) {
+            int to = Math.min(from + channels.length, files.size());
+            for (int i = from; i < to; i++) {
+                EncodedEntry entry = entries.get(i);
+                FileChannel fc = null;
+                File tempFile = null;
+                try {
+                    tempFile = mDiskCacheManager.newTempFile();
+                    fc = new FileOutputStream(tempFile).getChannel();
+                    ByteBuffer[] buffers = {entry.header.duplicate(), ByteBuffer.wrap(entry.payload)};
+                    while (buffers[1].hasRemaining()) {
+                        fc.write(buffers);
+                    }
+                    channels[i - from] = fc;
+                    tempFiles[i - from] = tempFile;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    CloseUtils.closeIOQuietly(fc);
+                    if (tempFile != null) tempFile.delete();
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+            }
+            for (int i = from; i < to; i++) {
+                FileChannel fc = channels[i - from];
+                File tempFile = tempFiles[i - from];
+                if (fc == null) continue;
+                channels[i - from] = null;
+                tempFiles[i - from] = null;
+                try {
+                    fc.force(true);
+                    written[i] = true;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    tempFile.delete();
+                } finally {
+                    CloseUtils.closeIOQuietly(fc);
+                }
+                if (written[i]) written[i] = renameEntry(tempFile, files.get(i));
             }
         }
+        return written;
     }
 
     private static boolean isSpace(final String s) {
@@ -3,13 +3,30 @@ package com.jeff.jframework.tools.cache;
 import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.os.Parcelable;
+import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.jeff.jframework.tools.ThreadUtils;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.Serializable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Jeff
@@ -17,10 +34,51 @@ import java.util.concurrent.ConcurrentHashMap;
  * @date 2018/11/13.
  */
 public class LruDoubleCache {
+
+    @IntDef({WritePolicy.WRITE_THROUGH, WritePolicy.WRITE_BACK})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface WritePolicy {
+        /**
+         * Write disk on the caller's thread, along with memory
+         */
+        int WRITE_THROUGH = 0;
+        /**
+         * Write memory now and disk after the write-back delay, puts to a key within the
+         * delay cost a single disk write
+         */
+        int WRITE_BACK = 1;
+    }
+
     private static final ConcurrentHashMap<String, LruDoubleCache> CACHE_MAP = new ConcurrentHashMap<>();
+    /**
+     * The expected count of distinct keys read recently, for telling cold keys.
+     */
+    private static final int READ_SKETCH_CAPACITY = 4096;
+    private static final Weigher SIZE_WEIGHER = new DefaultWeigher();
+    private static volatile ScheduledThreadPoolExecutor sExecutor;
+
     private LruMemoryCache mLruMemoryCache;
     private LruDiskCache   mLruDiskCache;
 
+    private volatile boolean mPromoteOnDiskHit = true;
+    private volatile int mWritePolicy = WritePolicy.WRITE_THROUGH;
+    private volatile long mWriteBackDelayMs = 2000;
+    private volatile int mMemoryOnlyAbove = -1;
+    private volatile int mColdThreshold;
+    /**
+     * Guarded by itself.
+     */
+    private final FrequencySketch mReadSketch = new FrequencySketch(READ_SKETCH_CAPACITY);
+    private final ConcurrentHashMap<String, PendingWrite> mPendingWrites = new ConcurrentHashMap<>();
+    /**
+     * Held while writing back, so a remove never races with the write of an older value.
+     */
+    private final Object mWriteLock = new Object();
+    private final AtomicLong mMemoryHits = new AtomicLong();
+    private final AtomicLong mDiskHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+    private final AtomicLong mPromotions = new AtomicLong();
+
     /**
      * Return the single {@link LruDoubleCache} instance.
      *
@@ -53,13 +111,107 @@ public class LruDoubleCache {
         mLruDiskCache = cacheUtils;
     }
 
+    ///////////////////////////////////////////////////////////////////////////
+    // about tier policies
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Copy values read from disk into memory, on a background thread, for the save time they
+     * have left on disk. Enabled by default.
+     *
+     * @param enabled {@code true}: promote<br>{@code false}: leave disk hits on disk
+     */
+    public void setPromoteOnDiskHit(final boolean enabled) {
+        mPromoteOnDiskHit = enabled;
+    }
+
+    /**
+     * Set when puts reach disk. Switching to {@link WritePolicy#WRITE_THROUGH} writes the
+     * pending write-backs.
+     *
+     * @param policy The write policy.
+     */
+    public void setWritePolicy(@WritePolicy final int policy) {
+        mWritePolicy = policy;
+        if (policy == WritePolicy.WRITE_THROUGH) flush();
+    }
+
+    /**
+     * Set how long {@link WritePolicy#WRITE_BACK} holds a put before writing it to disk,
+     * 2 seconds by default. Reads see the held values.
+     *
+     * @param delay The delay of write-backs.
+     * @param unit  The unit of delay.
+     */
+    public void setWriteBackDelay(final long delay, @NonNull final TimeUnit unit) {
+        mWriteBackDelayMs = Math.max(0, unit.toMillis(delay));
+    }
+
+    /**
+     * Keep values heavier than the given bytes in memory only, as weighed by
+     * {@link DefaultWeigher}. Putting one removes the disk copy of the key.
+     *
+     * @param maxBytes The max bytes of a value written to disk, negative for no limit.
+     */
+    public void setMemoryOnlyAbove(final int maxBytes) {
+        mMemoryOnlyAbove = maxBytes;
+    }
+
+    /**
+     * Keep values of keys read less than the given times recently on disk only. Putting one
+     * removes the memory copy of the key, and reading one from disk doesn't promote it.
+     *
+     * @param minReads The min count of recent reads of a key kept in memory, 0 to keep all.
+     */
+    public void setColdThreshold(final int minReads) {
+        mColdThreshold = Math.min(minReads, 15);
+    }
+
+    /**
+     * Write every pending write-back now, on the caller's thread.
+     */
+    public void flush() {
+        for (String key : mPendingWrites.keySet()) {
+            writePending(key);
+        }
+    }
+
+    /**
+     * Return where the reads were served from, since the cache was created.
+     *
+     * @return the stats of the tiers
+     */
+    public TierStats getTierStats() {
+        return new TierStats(mMemoryHits.get(), mDiskHits.get(), mMisses.get(), mPromotions.get());
+    }
+
+    /**
+     * Write to disk only the puts the policy admits, memory takes them all. It is the policy
+     * of the disk cache, shared with every user of it.
+     *
+     * @param policy The policy, null to admit all.
+     * @see LruDiskCache#setAdmissionPolicy(AdmissionPolicy)
+     */
+    public void setAdmissionPolicy(@Nullable final AdmissionPolicy policy) {
+        mLruDiskCache.setAdmissionPolicy(policy);
+    }
+
+    /**
+     * Return how the admission policy of the disk cache answered its puts.
+     *
+     * @return the stats of admission
+     */
+    public AdmissionStats getAdmissionStats() {
+        return mLruDiskCache.getAdmissionStats();
+    }
+
     /**
      * Put value in cache.
      *
      * @param key   The key of cache.
      * @param value The value of cache.
      */
-    public void put(@NonNull final String key, Object value) {
+    public void put(@NonNull final String key, final Object value) {
         put(key, value,-1);
     }
 
@@ -70,9 +222,351 @@ public class LruDoubleCache {
      * @param value The value of cache.
      * @param saveTime The save time of cache, in seconds.
      */
-    public void put(@NonNull final String key, Object value, final int saveTime) {
-        mLruMemoryCache.put(key, value, saveTime);
-        mLruDiskCache.put(key, value, saveTime);
+    public void put(@NonNull final String key, final Object value, final int saveTime) {
+        write(key, value, saveTime, new Runnable() {
+            @Override
+            public void run() {
+                mLruDiskCache.put(key, value, saveTime);
+            }
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about codecs
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Put value in cache, encoded on disk by the codec of its type in {@link CacheCodecs}.
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param type     The type of value.
+     * @param saveTime The save time of cache, in seconds.
+     * @param <T>      The value type.
+     */
+    public <T> void put(@NonNull final String key, final T value,
+                        @NonNull final Class<T> type, final int saveTime) {
+        put(key, value, CacheCodecs.get(type), saveTime);
+    }
+
+    /**
+     * Put value in cache.
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param codec    The codec of value on disk.
+     * @param saveTime The save time of cache, in seconds.
+     * @param <T>      The value type.
+     */
+    public <T> void put(@NonNull final String key, final T value,
+                        @NonNull final CacheCodec<T> codec, final int saveTime) {
+        write(key, value, saveTime, new Runnable() {
+            @Override
+            public void run() {
+                mLruDiskCache.put(key, value, codec, saveTime);
+            }
+        });
+    }
+
+    /**
+     * Return the value in cache, decoded from disk by the codec of its type in {@link CacheCodecs}.
+     *
+     * @param key  The key of cache.
+     * @param type The type of value.
+     * @param <T>  The value type.
+     * @return the value if cache exists or null otherwise
+     */
+    public <T> T get(@NonNull final String key, @NonNull final Class<T> type) {
+        return get(key, CacheCodecs.get(type));
+    }
+
+    /**
+     * Return the value in cache.
+     *
+     * @param key   The key of cache.
+     * @param codec The codec of value on disk.
+     * @param <T>   The value type.
+     * @return the value if cache exists or null otherwise
+     */
+    public <T> T get(@NonNull final String key, @NonNull final CacheCodec<T> codec) {
+        return read(key, null, new DiskRead<T>() {
+            @Override
+            public T read(String key) {
+                return mLruDiskCache.get(key, codec);
+            }
+        });
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about loading
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the value in cache, decoded from disk by the codec of its type in
+     * {@link CacheCodecs}, loading it on the caller's thread if it doesn't exist.
+     *
+     * @param key      The key of cache.
+     * @param type     The type of value.
+     * @param loader   The loader of the value.
+     * @param saveTime The save time of the loaded value, in seconds.
+     * @param <T>      The value type.
+     * @return the value, or null if the loader returned null
+     * @throws ExecutionException if the loader threw, with its exception as the cause
+     */
+    public <T> T getOrLoad(@NonNull final String key,
+                           @NonNull final Class<T> type,
+                           @NonNull final CacheLoader<T> loader,
+                           final int saveTime) throws ExecutionException {
+        return getOrLoad(key, CacheCodecs.get(type), loader, saveTime);
+    }
+
+    /**
+     * Return the value in cache, loading it on the caller's thread if it's neither in memory
+     * nor on disk.
+     * <p>Concurrent misses of a key share a single read of disk and load, a failed load
+     * caches nothing. Values older than the refresh time of the memory cache, see
+     * {@link LruMemoryCache#setRefreshAfterWrite(long, TimeUnit)}, are reloaded in the
+     * background, skipping disk. Reads count in {@link #getTierStats()}, misses sharing a
+     * read of disk count once.</p>
+     *
+     * @param key      The key of cache.
+     * @param codec    The codec of value on disk.
+     * @param loader   The loader of the value.
+     * @param saveTime The save time of the loaded value, in seconds.
+     * @param <T>      The value type.
+     * @return the value, or null if the loader returned null
+     * @throws ExecutionException if the loader threw, with its exception as the cause
+     */
+    public <T> T getOrLoad(@NonNull final String key,
+                           @NonNull final CacheCodec<T> codec,
+                           @NonNull final CacheLoader<T> loader,
+                           final int saveTime) throws ExecutionException {
+        CacheLoader<T> refresher = loadToDisk(codec, loader, saveTime);
+        T value = memoryOrPending(key, refresher, saveTime);
+        if (value != null) return value;
+        return mLruMemoryCache.getOrLoad(key,
+                diskThenLoad(codec, loader, saveTime), refresher, saveTime);
+    }
+
+    /**
+     * Return the value in cache, decoded from disk by the codec of its type in
+     * {@link CacheCodecs}, loading it on a background thread if it doesn't exist.
+     *
+     * @param key      The key of cache.
+     * @param type     The type of value.
+     * @param loader   The loader of the value.
+     * @param saveTime The save time of the loaded value, in seconds.
+     * @param <T>      The value type.
+     * @return the future of the value
+     */
+    public <T> Future<T> getOrLoadAsync(@NonNull final String key,
+                                        @NonNull final Class<T> type,
+                                        @NonNull final CacheLoader<T> loader,
+                                        final int saveTime) {
+        return getOrLoadAsync(key, CacheCodecs.get(type), loader, saveTime);
+    }
+
+    /**
+     * Return the value in cache, reading disk and loading it on a background thread if it
+     * isn't in memory, see {@link #getOrLoad(String, CacheCodec, CacheLoader, int)}.
+     *
+     * @param key      The key of cache.
+     * @param codec    The codec of value on disk.
+     * @param loader   The loader of the value.
+     * @param saveTime The save time of the loaded value, in seconds.
+     * @param <T>      The value type.
+     * @return the future of the value
+     */
+    public <T> Future<T> getOrLoadAsync(@NonNull final String key,
+                                        @NonNull final CacheCodec<T> codec,
+                                        @NonNull final CacheLoader<T> loader,
+                                        final int saveTime) {
+        CacheLoader<T> refresher = loadToDisk(codec, loader, saveTime);
+        T value = memoryOrPending(key, refresher, saveTime);
+        if (value != null) return SingleFlight.completed(value);
+        return mLruMemoryCache.getOrLoadAsync(key,
+                diskThenLoad(codec, loader, saveTime), refresher, saveTime);
+    }
+
+    /**
+     * {@link #memoryOrPending(String)} for the loading gets, reloading a stale value of
+     * memory in the background.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T memoryOrPending(final String key,
+                                  final CacheLoader<T> refresher,
+                                  final int saveTime) {
+        recordRead(key);
+        T value = mLruMemoryCache.getIfPresent(key, refresher, saveTime);
+        if (value == null) {
+            PendingWrite pending = mPendingWrites.get(key);
+            if (pending != null) value = (T) pending.value;
+        }
+        if (value != null) mMemoryHits.incrementAndGet();
+        return value;
+    }
+
+    /**
+     * Return a loader reading disk first, then the loader. A value of disk goes to memory
+     * with the save time it has left on disk.
+     */
+    private <T> CacheLoader<T> diskThenLoad(final CacheCodec<T> codec,
+                                            final CacheLoader<T> loader,
+                                            final int saveTime) {
+        final CacheLoader<T> load = loadToDisk(codec, loader, saveTime);
+        return new LruMemoryCache.TierLoader<T>() {
+            private boolean mDiskHit;
+
+            @Override
+            public T load(@NonNull String key) throws Exception {
+                T value = mLruDiskCache.get(key, codec);
+                if (value != null) {
+                    mDiskHit = true;
+                    mDiskHits.incrementAndGet();
+                    return value;
+                }
+                mMisses.incrementAndGet();
+                return load.load(key);
+            }
+
+            @Override
+            public int saveTimeLeft(String key, int saveTime) {
+                if (!mDiskHit) return saveTime;
+                Integer left = mLruDiskCache.getSaveTimeLeft(key);
+                // expired since the read
+                return left == null ? 0 : left;
+            }
+        };
+    }
+
+    private <T> CacheLoader<T> loadToDisk(final CacheCodec<T> codec,
+                                          final CacheLoader<T> loader,
+                                          final int saveTime) {
+        return new CacheLoader<T>() {
+            @Override
+            public T load(@NonNull String key) throws Exception {
+                T value = loader.load(key);
+                if (value != null) mLruDiskCache.put(key, value, codec, saveTime);
+                return value;
+            }
+        };
+    }
+
+    ///////////////////////////////////////////////////////////////////////////
+    // about batch
+    ///////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Return the values of the keys in cache, decoded from disk by the codec of their type
+     * in {@link CacheCodecs}.
+     *
+     * @param keys The keys of cache.
+     * @param type The type of values.
+     * @param <T>  The value type.
+     * @return the values of the keys whose cache exists, missing keys are absent
+     */
+    public <T> Map<String, T> getAll(@NonNull final Collection<String> keys,
+                                     @NonNull final Class<T> type) {
+        return getAll(keys, CacheCodecs.get(type));
+    }
+
+    /**
+     * Return the values of the keys in cache, the keys missing in memory are read from disk
+     * with one {@link LruDiskCache#getAll(Collection, CacheCodec)}.
+     *
+     * @param keys  The keys of cache.
+     * @param codec The codec of values on disk.
+     * @param <T>   The value type.
+     * @return the values of the keys whose cache exists, missing keys are absent
+     */
+    public <T> Map<String, T> getAll(@NonNull final Collection<String> keys,
+                                     @NonNull final CacheCodec<T> codec) {
+        Map<String, T> values = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String key : keys) {
+            recordRead(key);
+            T value = memoryOrPending(key);
+            if (value != null) {
+                values.put(key, value);
+            } else {
+                misses.add(key);
+            }
+        }
+        if (misses.isEmpty()) return values;
+        Map<String, T> found = mLruDiskCache.getAll(misses, codec);
+        mDiskHits.addAndGet(found.size());
+        mMisses.addAndGet(misses.size() - found.size());
+        for (Map.Entry<String, T> value : found.entrySet()) {
+            promote(value.getKey(), value.getValue());
+        }
+        values.putAll(found);
+        return values;
+    }
+
+    /**
+     * Put the values in cache, encoded on disk by the codec of their type in
+     * {@link CacheCodecs}.
+     *
+     * @param values   The values of cache by key.
+     * @param type     The type of values.
+     * @param saveTime The save time of cache, in seconds.
+     * @param <T>      The value type.
+     * @return whether each value is put on disk, by key
+     */
+    public <T> Map<String, Boolean> putAll(@NonNull final Map<String, T> values,
+                                           @NonNull final Class<T> type,
+                                           final int saveTime) {
+        return putAll(values, CacheCodecs.get(type), saveTime);
+    }
+
+    /**
+     * Put the values in cache.
+     *
+     * @param values   The values of cache by key.
+     * @param codec    The codec of values on disk.
+     * @param saveTime The save time of cache, in seconds.
+     * @param <T>      The value type.
+     * @return whether each value is put on disk, by key
+     */
+    public <T> Map<String, Boolean> putAll(@NonNull final Map<String, T> values,
+                                           @NonNull final CacheCodec<T> codec,
+                                           final int saveTime) {
+        Map<String, Boolean> results = new HashMap<>();
+        Map<String, T> toDisk = new HashMap<>();
+        for (Map.Entry<String, T> entry : values.entrySet()) {
+            final String key = entry.getKey();
+            final T value = entry.getValue();
+            if (!putMemory(key, value, saveTime)) {
+                results.put(key, false);
+            } else if (mWritePolicy == WritePolicy.WRITE_BACK) {
+                writeBack(key, value, new Runnable() {
+                    @Override
+                    public void run() {
+                        mLruDiskCache.put(key, value, codec, saveTime);
+                    }
+                });
+                results.put(key, true);
+            } else {
+                discardPending(key);
+                toDisk.put(key, value);
+            }
+        }
+        if (!toDisk.isEmpty()) results.putAll(mLruDiskCache.putAll(toDisk, codec, saveTime));
+        return results;
+    }
+
+    /**
+     * Remove the cache of the keys.
+     *
+     * @param keys The keys of cache.
+     * @return whether the cache of each key is gone from disk, by key
+     */
+    public Map<String, Boolean> removeAll(@NonNull final Collection<String> keys) {
+        for (String key : keys) {
+            mLruMemoryCache.remove(key);
+            discardPending(key);
+        }
+        return mLruDiskCache.removeAll(keys);
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -96,9 +590,13 @@ public class LruDoubleCache {
      * @param value    The value of cache.
      * @param saveTime The save time of cache, in seconds.
      */
-    public void put(@NonNull final String key, byte[] value, final int saveTime) {
-        mLruMemoryCache.put(key, value, saveTime);
-        mLruDiskCache.put(key, value, saveTime);
+    public void put(@NonNull final String key, final byte[] value, final int saveTime) {
+        write(key, value, saveTime, new Runnable() {
+            @Override
+            public void run() {
+                mLruDiskCache.put(key, value, saveTime);
+            }
+        });
     }
 
     /**
@@ -119,9 +617,12 @@ public class LruDoubleCache {
      * @return the bytes if cache exists or defaultValue otherwise
      */
     public byte[] getBytes(@NonNull final String key, final byte[] defaultValue) {
-        byte[] obj = mLruMemoryCache.get(key);
-        if (obj != null) return obj;
-        return mLruDiskCache.getBytes(key, defaultValue);
+        return read(key, defaultValue, new DiskRead<byte[]>() {
+            @Override
+            public byte[] read(String key) {
+                return mLruDiskCache.getBytes(key, null);
+            }
+        });
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -146,8 +647,12 @@ public class LruDoubleCache {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final String value, final int saveTime) {
-        mLruMemoryCache.put(key, value, saveTime);
-        mLruDiskCache.put(key, value, saveTime);
+        write(key, value, saveTime, new Runnable() {
+            @Override
+            public void run() {
+                mLruDiskCache.put(key, value, saveTime);
+            }
+        });
     }
 
     /**
@@ -168,9 +673,12 @@ public class LruDoubleCache {
      * @return the string value if cache exists or defaultValue otherwise
      */
     public String getString(@NonNull final String key, final String defaultValue) {
-        String obj = mLruMemoryCache.get(key);
-        if (obj != null) return obj;
-        return mLruDiskCache.getString(key, defaultValue);
+        return read(key, defaultValue, new DiskRead<String>() {
+            @Override
+            public String read(String key) {
+                return mLruDiskCache.getString(key, null);
+            }
+        });
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -197,8 +705,12 @@ public class LruDoubleCache {
     public void put(@NonNull final String key,
                     final JSONObject value,
                     final int saveTime) {
-        mLruMemoryCache.put(key, value, saveTime);
-        mLruDiskCache.put(key, value, saveTime);
+        write(key, value, saveTime, new Runnable() {
+            @Override
+            public void run() {
+                mLruDiskCache.put(key, value, saveTime);
+            }
+        });
     }
 
     /**
@@ -219,9 +731,12 @@ public class LruDoubleCache {
      * @return the JSONObject if cache exists or defaultValue otherwise
      */
     public JSONObject getJSONObject(@NonNull final String key, final JSONObject defaultValue) {
-        JSONObject obj = mLruMemoryCache.get(key);
-        if (obj != null) return obj;
-        return mLruDiskCache.getJSONObject(key, defaultValue);
+        return read(key, defaultValue, new DiskRead<JSONObject>() {
+            @Override
+            public JSONObject read(String key) {
+                return mLruDiskCache.getJSONObject(key, null);
+            }
+        });
     }
 
 
@@ -247,8 +762,12 @@ public class LruDoubleCache {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final JSONArray value, final int saveTime) {
-        mLruMemoryCache.put(key, value, saveTime);
-        mLruDiskCache.put(key, value, saveTime);
+        write(key, value, saveTime, new Runnable() {
+            @Override
+            public void run() {
+                mLruDiskCache.put(key, value, saveTime);
+            }
+        });
     }
 
     /**
@@ -269,9 +788,12 @@ public class LruDoubleCache {
      * @return the JSONArray if cache exists or defaultValue otherwise
      */
     public JSONArray getJSONArray(@NonNull final String key, final JSONArray defaultValue) {
-        JSONArray obj = mLruMemoryCache.get(key);
-        if (obj != null) return obj;
-        return mLruDiskCache.getJSONArray(key, defaultValue);
+        return read(key, defaultValue, new DiskRead<JSONArray>() {
+            @Override
+            public JSONArray read(String key) {
+                return mLruDiskCache.getJSONArray(key, null);
+            }
+        });
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -296,8 +818,12 @@ public class LruDoubleCache {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final Bitmap value, final int saveTime) {
-        mLruMemoryCache.put(key, value, saveTime);
-        mLruDiskCache.put(key, value, saveTime);
+        write(key, value, saveTime, new Runnable() {
+            @Override
+            public void run() {
+                mLruDiskCache.put(key, value, saveTime);
+            }
+        });
     }
 
     /**
@@ -318,9 +844,12 @@ public class LruDoubleCache {
      * @return the bitmap if cache exists or defaultValue otherwise
      */
     public Bitmap getBitmap(@NonNull final String key, final Bitmap defaultValue) {
-        Bitmap obj = mLruMemoryCache.get(key);
-        if (obj != null) return obj;
-        return mLruDiskCache.getBitmap(key, defaultValue);
+        return read(key, defaultValue, new DiskRead<Bitmap>() {
+            @Override
+            public Bitmap read(String key) {
+                return mLruDiskCache.getBitmap(key, null);
+            }
+        });
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -345,8 +874,12 @@ public class LruDoubleCache {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final Drawable value, final int saveTime) {
-        mLruMemoryCache.put(key, value, saveTime);
-        mLruDiskCache.put(key, value, saveTime);
+        write(key, value, saveTime, new Runnable() {
+            @Override
+            public void run() {
+                mLruDiskCache.put(key, value, saveTime);
+            }
+        });
     }
 
     /**
@@ -367,9 +900,12 @@ public class LruDoubleCache {
      * @return the drawable if cache exists or defaultValue otherwise
      */
     public Drawable getDrawable(@NonNull final String key, final Drawable defaultValue) {
-        Drawable obj = mLruMemoryCache.get(key);
-        if (obj != null) return obj;
-        return mLruDiskCache.getDrawable(key, defaultValue);
+        return read(key, defaultValue, new DiskRead<Drawable>() {
+            @Override
+            public Drawable read(String key) {
+                return mLruDiskCache.getDrawable(key, null);
+            }
+        });
     }
 
 
@@ -395,8 +931,12 @@ public class LruDoubleCache {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final Parcelable value, final int saveTime) {
-        mLruMemoryCache.put(key, value, saveTime);
-        mLruDiskCache.put(key, value, saveTime);
+        write(key, value, saveTime, new Runnable() {
+            @Override
+            public void run() {
+                mLruDiskCache.put(key, value, saveTime);
+            }
+        });
     }
 
     /**
@@ -424,9 +964,12 @@ public class LruDoubleCache {
     public <T> T getParcelable(@NonNull final String key,
                                @NonNull final Parcelable.Creator<T> creator,
                                final T defaultValue) {
-        T value = mLruMemoryCache.get(key);
-        if (value != null) return value;
-        return mLruDiskCache.getParcelable(key, creator, defaultValue);
+        return read(key, defaultValue, new DiskRead<T>() {
+            @Override
+            public T read(String key) {
+                return mLruDiskCache.getParcelable(key, creator, null);
+            }
+        });
     }
 
     ///////////////////////////////////////////////////////////////////////////
@@ -451,8 +994,12 @@ public class LruDoubleCache {
      * @param saveTime The save time of cache, in seconds.
      */
     public void put(@NonNull final String key, final Serializable value, final int saveTime) {
-        mLruMemoryCache.put(key, value, saveTime);
-        mLruDiskCache.put(key, value, saveTime);
+        write(key, value, saveTime, new Runnable() {
+            @Override
+            public void run() {
+                mLruDiskCache.put(key, value, saveTime);
+            }
+        });
     }
 
     /**
@@ -473,9 +1020,12 @@ public class LruDoubleCache {
      * @return the bitmap if cache exists or defaultValue otherwise
      */
     public Object getSerializable(@NonNull final String key, final Object defaultValue) {
-        Object obj = mLruMemoryCache.get(key);
-        if (obj != null) return obj;
-        return mLruDiskCache.getSerializable(key, defaultValue);
+        return read(key, defaultValue, new DiskRead<Object>() {
+            @Override
+            public Object read(String key) {
+                return mLruDiskCache.getSerializable(key, null);
+            }
+        });
     }
 
     /**
@@ -512,6 +1062,7 @@ public class LruDoubleCache {
      */
     public void remove(@NonNull String key) {
         mLruMemoryCache.remove(key);
+        discardPending(key);
         mLruDiskCache.remove(key);
     }
 
@@ -520,6 +1071,163 @@ public class LruDoubleCache {
      */
     public void clear() {
         mLruMemoryCache.clear();
+        synchronized (mWriteLock) {
+            mPendingWrites.clear();
+        }
         mLruDiskCache.clear();
     }
+
+    /**
+     * Read the key through memory, the pending write-backs, then disk.
+     *
+     * @param diskRead The typed read of disk, returning null if the cache doesn't exist.
+     */
+    private <T> T read(final String key, final T defaultValue, final DiskRead<T> diskRead) {
+        recordRead(key);
+        T value = memoryOrPending(key);
+        if (value != null) return value;
+        value = diskRead.read(key);
+        if (value == null) {
+            mMisses.incrementAndGet();
+            return defaultValue;
+        }
+        mDiskHits.incrementAndGet();
+        promote(key, value);
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T memoryOrPending(final String key) {
+        T value = mLruMemoryCache.get(key);
+        if (value == null) {
+            PendingWrite pending = mPendingWrites.get(key);
+            if (pending != null) value = (T) pending.value;
+        }
+        if (value != null) mMemoryHits.incrementAndGet();
+        return value;
+    }
+
+    private void promote(final String key, final Object value) {
+        if (!mPromoteOnDiskHit || isCold(key)) return;
+        executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                Integer saveTime = mLruDiskCache.getSaveTimeLeft(key);
+                // removed or expired since the read, or put again
+                if (saveTime == null || mLruMemoryCache.get(key) != null) return;
+                mLruMemoryCache.put(key, value, saveTime);
+                mPromotions.incrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Put the value in both tiers as the policies say.
+     *
+     * @param diskPut The typed put of disk.
+     */
+    private void write(final String key, final Object value, final int saveTime,
+                       final Runnable diskPut) {
+        if (!putMemory(key, value, saveTime)) return;
+        if (mWritePolicy == WritePolicy.WRITE_BACK) {
+            writeBack(key, value, diskPut);
+        } else {
+            discardPending(key);
+            diskPut.run();
+        }
+    }
+
+    /**
+     * Put the value in memory unless it is cold.
+     *
+     * @return whether the value goes to disk as well, not if it is kept in memory only
+     */
+    private boolean putMemory(final String key, final Object value, final int saveTime) {
+        int memoryOnlyAbove = mMemoryOnlyAbove;
+        if (value != null && memoryOnlyAbove >= 0
+                && SIZE_WEIGHER.weigh(key, value) > memoryOnlyAbove) {
+            mLruMemoryCache.put(key, value, saveTime);
+            discardPending(key);
+            mLruDiskCache.remove(key);
+            return false;
+        }
+        if (isCold(key)) {
+            mLruMemoryCache.remove(key);
+        } else {
+            mLruMemoryCache.put(key, value, saveTime);
+        }
+        return true;
+    }
+
+    private void writeBack(final String key, final Object value, final Runnable diskPut) {
+        // a key pending already is written once its first delay is over, newest value
+        if (mPendingWrites.put(key, new PendingWrite(value, diskPut)) != null) return;
+        executor().schedule(new Runnable() {
+            @Override
+            public void run() {
+                writePending(key);
+            }
+        }, mWriteBackDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void writePending(final String key) {
+        synchronized (mWriteLock) {
+            PendingWrite pending = mPendingWrites.remove(key);
+            if (pending != null) pending.diskPut.run();
+        }
+    }
+
+    private void discardPending(final String key) {
+        if (!mPendingWrites.containsKey(key)) return;
+        synchronized (mWriteLock) {
+            mPendingWrites.remove(key);
+        }
+    }
+
+    private void recordRead(final String key) {
+        if (mColdThreshold <= 0) return;
+        synchronized (mReadSketch) {
+            mReadSketch.increment(TinyLfuStore.spread(key));
+        }
+    }
+
+    private boolean isCold(final String key) {
+        int threshold = mColdThreshold;
+        if (threshold <= 0) return false;
+        synchronized (mReadSketch) {
+            return mReadSketch.frequency(TinyLfuStore.spread(key)) < threshold;
+        }
+    }
+
+    private static ScheduledExecutorService executor() {
+        if (sExecutor == null) {
+            synchronized (LruDoubleCache.class) {
+                if (sExecutor == null) {
+                    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                            ThreadUtils.createThreadFactory("lruDoubleCache", Thread.NORM_PRIORITY - 1));
+                    executor.setKeepAliveTime(60L, TimeUnit.SECONDS);
+                    executor.allowCoreThreadTimeOut(true);
+                    sExecutor = executor;
+                }
+            }
+        }
+        return sExecutor;
+    }
+
+    /**
+     * A typed read of the disk tier.
+     */
+    private interface DiskRead<T> {
+        T read(String key);
+    }
+
+    private static final class PendingWrite {
+        final Object value;
+        final Runnable diskPut;
+
+        PendingWrite(final Object value, final Runnable diskPut) {
+            this.value = value;
+            this.diskPut = diskPut;
+        }
+    }
 }
@@ -1,9 +1,23 @@
 package com.jeff.jframework.tools.cache;
 
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.IntDef;
 import android.support.annotation.NonNull;
-import android.support.v4.util.LruCache;
 
+import com.jeff.jframework.core.ContextUtils;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Jeff
@@ -11,12 +25,64 @@ import java.util.concurrent.ConcurrentHashMap;
  * @date 2018/11/13.
  */
 public class LruMemoryCache {
+
+    @IntDef({Engine.LRU, Engine.TINY_LFU})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Engine {
+        /**
+         * Plain LRU under one lock
+         */
+        int LRU = 0;
+        /**
+         * Striped, lock-free reads, and admission by popularity so scans don't flush hot
+         * entries. The budget is split between the stripes.
+         */
+        int TINY_LFU = 1;
+    }
+
+    @IntDef({Expiry.AFTER_WRITE, Expiry.AFTER_ACCESS})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Expiry {
+        /**
+         * The save time counts from the put
+         */
+        int AFTER_WRITE = 0;
+        /**
+         * The save time counts from the last put or get
+         */
+        int AFTER_ACCESS = 1;
+    }
+
     private static final int DEFAULT_MAX_COUNT = 256;
 
     private static final ConcurrentHashMap<String, LruMemoryCache> CACHE_MAP = new ConcurrentHashMap<>();
 
     private final String mCacheKey;
-    private final LruCache<String, CacheValue> mMemoryCache;
+    /**
+     * The max weight of cache, the store may be resized below it under memory pressure.
+     */
+    private final int mMaxSize;
+    private final MemoryGovernor.Trimmable mTrimmable;
+    private final MemoryStore mMemoryCache;
+    /**
+     * Null unless the cache is limited by the weight of its values instead of their count.
+     */
+    private final Weigher mWeigher;
+    /**
+     * Values which expire, by due time. Values leave it as they leave the store.
+     */
+    private final TimerWheel mTimerWheel = new TimerWheel(SystemClock.elapsedRealtime());
+    private volatile int mExpiry = Expiry.AFTER_WRITE;
+    private final ExpirySweeper mSweeper;
+    private final SingleFlight mLoads = new SingleFlight();
+    /**
+     * The age after which a loaded value is reloaded, in milliseconds, -1 if never.
+     */
+    private volatile long mRefreshAfterWrite = -1;
+    /**
+     * Null unless byte values may be kept off the heap.
+     */
+    private volatile SlabStore mOffHeap;
 
     /**
      * Return the single {@link LruMemoryCache} instance.
@@ -45,17 +111,122 @@ public class LruMemoryCache {
      * @return the single {@link LruMemoryCache} instance
      */
     public static LruMemoryCache getInstance(final String cacheKey, final int maxCount) {
+        return getInstance(cacheKey, maxCount, Engine.LRU);
+    }
+
+    /**
+     * Return the single {@link LruMemoryCache} instance.
+     *
+     * @param cacheKey The key of cache.
+     * @param maxCount The max count of cache.
+     * @param engine   The engine of cache.
+     * @return the single {@link LruMemoryCache} instance
+     */
+    public static LruMemoryCache getInstance(final String cacheKey,
+                                             final int maxCount,
+                                             @Engine final int engine) {
         LruMemoryCache cache = CACHE_MAP.get(cacheKey);
         if (cache == null) {
-            cache = new LruMemoryCache(cacheKey, new LruCache<String, CacheValue>(maxCount));
+            cache = new LruMemoryCache(cacheKey, maxCount, null, engine);
             CACHE_MAP.put(cacheKey, cache);
         }
         return cache;
     }
 
-    private LruMemoryCache(String cacheKey, LruCache<String, CacheValue> memoryCache) {
+    /**
+     * Return the single {@link LruMemoryCache} instance limited by the weight of its values,
+     * weighed by {@link DefaultWeigher}.
+     *
+     * @param cacheKey The key of cache.
+     * @param maxBytes The max weight of cache, in bytes.
+     * @return the single {@link LruMemoryCache} instance
+     */
+    public static LruMemoryCache getWeighedInstance(final String cacheKey, final int maxBytes) {
+        return getWeighedInstance(cacheKey, maxBytes, new DefaultWeigher());
+    }
+
+    /**
+     * Return the single {@link LruMemoryCache} instance limited by the weight of its values.
+     * <p>A value heavier than the whole budget isn't cached.</p>
+     *
+     * @param cacheKey The key of cache.
+     * @param maxBytes The max weight of cache, in bytes.
+     * @param weigher  The weigher of values.
+     * @return the single {@link LruMemoryCache} instance
+     */
+    public static LruMemoryCache getWeighedInstance(final String cacheKey,
+                                                    final int maxBytes,
+                                                    @NonNull final Weigher weigher) {
+        return getWeighedInstance(cacheKey, maxBytes, weigher, Engine.LRU);
+    }
+
+    /**
+     * Return the single {@link LruMemoryCache} instance limited by the weight of its values.
+     * <p>A value heavier than the whole budget, or a stripe of it for
+     * {@link Engine#TINY_LFU}, isn't cached.</p>
+     *
+     * @param cacheKey The key of cache.
+     * @param maxBytes The max weight of cache, in bytes.
+     * @param weigher  The weigher of values.
+     * @param engine   The engine of cache.
+     * @return the single {@link LruMemoryCache} instance
+     */
+    public static LruMemoryCache getWeighedInstance(final String cacheKey,
+                                                    final int maxBytes,
+                                                    @NonNull final Weigher weigher,
+                                                    @Engine final int engine) {
+        LruMemoryCache cache = CACHE_MAP.get(cacheKey);
+        if (cache == null) {
+            cache = new LruMemoryCache(cacheKey, maxBytes, weigher, engine);
+            CACHE_MAP.put(cacheKey, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Return the fraction of the heap the app should stay within, as reported by
+     * {@link ActivityManager#getMemoryClass()}, to size a weighed cache with.
+     *
+     * @param fraction The fraction of the memory class, such as 1/8.
+     * @return the bytes of the fraction of the memory class
+     */
+    public static int maxBytesOfMemoryClass(final float fraction) {
+        ActivityManager am = (ActivityManager) ContextUtils.getContext()
+                .getSystemService(Context.ACTIVITY_SERVICE);
+        // the memory class is in megabytes, fall back to the max heap of the VM
+        long heap = am != null ? am.getMemoryClass() * 1024L * 1024L : Runtime.getRuntime().maxMemory();
+        return (int) Math.min(heap * fraction, Integer.MAX_VALUE);
+    }
+
+    private LruMemoryCache(final String cacheKey,
+                           final int maxSize,
+                           final Weigher weigher,
+                           @Engine final int engine) {
         mCacheKey = cacheKey;
-        mMemoryCache = memoryCache;
+        mMaxSize = maxSize;
+        mWeigher = weigher;
+        MemoryStore.RemovalListener listener = new MemoryStore.RemovalListener() {
+            @Override
+            public void onRemoved(CacheValue value) {
+                if (value.saveTime >= 0) mTimerWheel.deschedule(value);
+            }
+        };
+        mMemoryCache = engine == Engine.TINY_LFU
+                ? new TinyLfuStore(maxSize, weigher != null, listener)
+                : new LruCacheStore(maxSize, listener);
+        mSweeper = new ExpirySweeper(new ExpirySweeper.Sweepable() {
+            @Override
+            public SweepStats sweepExpired() {
+                return sweep();
+            }
+        });
+        mTrimmable = new MemoryGovernor.Trimmable() {
+            @Override
+            public long resize(float fraction) {
+                return trimTo(fraction);
+            }
+        };
+        MemoryGovernor.getInstance().register(cacheKey, mTrimmable, MemoryGovernor.Priority.NORMAL);
     }
 
     @Override
@@ -63,6 +234,131 @@ public class LruMemoryCache {
         return mCacheKey + "@" + Integer.toHexString(hashCode());
     }
 
+    /**
+     * Set when the save time of values put from now on starts counting.
+     * <p>Save times are measured on a monotonic clock, changes of the wall clock don't
+     * expire or revive values.</p>
+     *
+     * @param expiry The expiry policy.
+     */
+    public void setExpiry(@Expiry final int expiry) {
+        mExpiry = expiry;
+    }
+
+    /**
+     * Set how hard {@link MemoryGovernor} trims the cache under memory pressure.
+     *
+     * @param priority The priority of cache.
+     */
+    public void setTrimPriority(@MemoryGovernor.Priority final int priority) {
+        MemoryGovernor.getInstance().register(mCacheKey, mTrimmable, priority);
+    }
+
+    /**
+     * Reload values read through a {@link CacheLoader} once they are older than the
+     * duration. The old value is served while the reload runs in the background and kept if
+     * it fails, the next reload then starts once the duration has passed again.
+     *
+     * @param duration The age of values to reload, negative to never reload.
+     * @param unit     The unit of duration.
+     */
+    public void setRefreshAfterWrite(final long duration, @NonNull final TimeUnit unit) {
+        mRefreshAfterWrite = duration < 0 ? -1 : unit.toMillis(duration);
+    }
+
+    /**
+     * Let {@link #putOffHeap(String, byte[], int)} keep byte values in direct memory, out of
+     * the Java heap, up to the given bytes on top of the budget of the cache.
+     * <p>Direct memory is taken in slabs of 1MB as values need it and never given back, the
+     * first call sets the limit.</p>
+     *
+     * @param maxBytes The max bytes of direct memory, rounded down to 1MB, 1MB at least.
+     */
+    public void enableOffHeap(final int maxBytes) {
+        if (mOffHeap != null) return;
+        synchronized (this) {
+            if (mOffHeap == null) mOffHeap = new SlabStore(maxBytes);
+        }
+    }
+
+    /**
+     * Put bytes in cache, off the heap if {@link #enableOffHeap(int)} was called.
+     *
+     * @param key   The key of cache.
+     * @param value The value of cache.
+     */
+    public void putOffHeap(@NonNull final String key, @NonNull final byte[] value) {
+        putOffHeap(key, value, -1);
+    }
+
+    /**
+     * Put bytes in cache, off the heap if {@link #enableOffHeap(int)} was called. Read them
+     * back with {@link #readBuffer(String, BufferReader)}.
+     * <p>Values larger than 1MB, or which don't find room off the heap, are put on the heap
+     * instead.</p>
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public void putOffHeap(@NonNull final String key, @NonNull final byte[] value, final int saveTime) {
+        SlabStore offHeap = mOffHeap;
+        long dueTime = saveTime < 0 ? -1 : SystemClock.elapsedRealtime() + saveTime * 1000L;
+        if (offHeap != null && offHeap.put(key, value, dueTime)) {
+            mMemoryCache.remove(key);
+        } else {
+            put(key, value, saveTime);
+        }
+    }
+
+    /**
+     * Put the UTF-8 bytes of the string in cache, off the heap if {@link #enableOffHeap(int)}
+     * was called.
+     *
+     * @param key      The key of cache.
+     * @param value    The value of cache.
+     * @param saveTime The save time of cache, in seconds.
+     */
+    public void putOffHeap(@NonNull final String key, @NonNull final String value, final int saveTime) {
+        putOffHeap(key, value.getBytes(Charset.forName("UTF-8")), saveTime);
+    }
+
+    /**
+     * Read the bytes in cache, put on or off the heap, through a read-only buffer.
+     * <p>Bytes off the heap are read in place, without a copy: their chunk isn't reused
+     * until the reader returns, even if the value is removed or evicted meanwhile.</p>
+     *
+     * @param key    The key of cache.
+     * @param reader The reader of the bytes, called on the caller's thread.
+     * @return the result of the reader if cache exists or null otherwise
+     */
+    public <R> R readBuffer(@NonNull final String key, @NonNull final BufferReader<R> reader) {
+        SlabStore offHeap = mOffHeap;
+        if (offHeap != null) {
+            SlabStore.Pinned pinned = offHeap.pin(key, SystemClock.elapsedRealtime());
+            if (pinned != null) {
+                try {
+                    return reader.read(pinned.buffer);
+                } finally {
+                    pinned.release();
+                }
+            }
+        }
+        Object value = get(key);
+        return value instanceof byte[]
+                ? reader.read(ByteBuffer.wrap((byte[]) value).asReadOnlyBuffer()) : null;
+    }
+
+    /**
+     * Return the bytes of the values off the heap, see {@link #enableOffHeap(int)}.
+     *
+     * @return the bytes of the values off the heap
+     */
+    public long getOffHeapSize() {
+        SlabStore offHeap = mOffHeap;
+        return offHeap == null ? 0 : offHeap.usedBytes();
+    }
+
     /**
      * Put bytes in cache.
      *
@@ -82,8 +378,26 @@ public class LruMemoryCache {
      */
     public void put(@NonNull final String key, final Object value, int saveTime) {
         if (value == null) return;
-        long dueTime = saveTime < 0 ? -1 : System.currentTimeMillis() + saveTime * 1000;
-        mMemoryCache.put(key, new CacheValue(dueTime, value));
+        SlabStore offHeap = mOffHeap;
+        if (offHeap != null) offHeap.remove(key);
+        int weight = mWeigher == null ? 1 : Math.max(1, mWeigher.weigh(key, value));
+        if (weight > mMemoryCache.maxEntryWeight()) {
+            // it would evict everything else, only to be evicted itself
+            mMemoryCache.remove(key);
+            return;
+        }
+        CacheValue cacheValue = new CacheValue(key, value, weight,
+                saveTime < 0 ? -1 : saveTime * 1000L, mExpiry == Expiry.AFTER_ACCESS);
+        long now = SystemClock.elapsedRealtime();
+        cacheValue.writeTime = now;
+        if (cacheValue.saveTime >= 0) {
+            cacheValue.dueTime = now + cacheValue.saveTime;
+            // before the put, so an eviction racing it deschedules it
+            mTimerWheel.schedule(cacheValue);
+        }
+        mMemoryCache.put(key, cacheValue);
+        // writes advance the wheel too, so due values go without a sweeper
+        removeExpired(mTimerWheel.advance(now));
     }
 
     /**
@@ -104,13 +418,149 @@ public class LruMemoryCache {
      * @return the value if cache exists or defaultValue otherwise
      */
     public <T> T get(@NonNull final String key, final T defaultValue) {
-        CacheValue val = mMemoryCache.get(key);
-        if (val == null) return defaultValue;
-        if (val.dueTime == -1 || val.dueTime >= System.currentTimeMillis()) {
+        CacheValue val = getLive(key);
+        return val == null ? defaultValue : (T) val.value;
+    }
+
+    /**
+     * Return the value in cache, loading it on the caller's thread if it doesn't exist.
+     * <p>Concurrent misses of a key share a single load, a failed load caches nothing.</p>
+     *
+     * @param key    The key of cache.
+     * @param loader The loader of the value.
+     * @return the value, or null if the loader returned null
+     * @throws ExecutionException if the loader threw, with its exception as the cause
+     */
+    public <T> T getOrLoad(@NonNull final String key,
+                           @NonNull final CacheLoader<T> loader) throws ExecutionException {
+        return getOrLoad(key, loader, -1);
+    }
+
+    /**
+     * Return the value in cache, loading it on the caller's thread if it doesn't exist.
+     * <p>Concurrent misses of a key share a single load, a failed load caches nothing.</p>
+     *
+     * @param key      The key of cache.
+     * @param loader   The loader of the value.
+     * @param saveTime The save time of the loaded value, in seconds.
+     * @return the value, or null if the loader returned null
+     * @throws ExecutionException if the loader threw, with its exception as the cause
+     */
+    public <T> T getOrLoad(@NonNull final String key,
+                           @NonNull final CacheLoader<T> loader,
+                           final int saveTime) throws ExecutionException {
+        return getOrLoad(key, loader, loader, saveTime);
+    }
+
+    /**
+     * Return the value in cache, loading it on a background thread if it doesn't exist.
+     * <p>Concurrent misses of a key share a single load, a failed load caches nothing.</p>
+     *
+     * @param key    The key of cache.
+     * @param loader The loader of the value.
+     * @return the future of the value
+     */
+    public <T> Future<T> getOrLoadAsync(@NonNull final String key,
+                                        @NonNull final CacheLoader<T> loader) {
+        return getOrLoadAsync(key, loader, -1);
+    }
+
+    /**
+     * Return the value in cache, loading it on a background thread if it doesn't exist.
+     * <p>Concurrent misses of a key share a single load, a failed load caches nothing.</p>
+     *
+     * @param key      The key of cache.
+     * @param loader   The loader of the value.
+     * @param saveTime The save time of the loaded value, in seconds.
+     * @return the future of the value
+     */
+    public <T> Future<T> getOrLoadAsync(@NonNull final String key,
+                                        @NonNull final CacheLoader<T> loader,
+                                        final int saveTime) {
+        return getOrLoadAsync(key, loader, loader, saveTime);
+    }
+
+    /**
+     * @param refresher The loader of a reload, which may skip tiers holding the old value.
+     */
+    <T> T getOrLoad(final String key,
+                    final CacheLoader<T> loader,
+                    final CacheLoader<T> refresher,
+                    final int saveTime) throws ExecutionException {
+        CacheValue val = getLive(key);
+        if (val != null) {
+            refreshIfStale(val, refresher, saveTime);
             return (T) val.value;
         }
-        mMemoryCache.remove(key);
-        return defaultValue;
+        return mLoads.load(key, newLoad(key, loader, saveTime));
+    }
+
+    <T> Future<T> getOrLoadAsync(final String key,
+                                 final CacheLoader<T> loader,
+                                 final CacheLoader<T> refresher,
+                                 final int saveTime) {
+        CacheValue val = getLive(key);
+        if (val != null) {
+            refreshIfStale(val, refresher, saveTime);
+            return SingleFlight.completed((T) val.value);
+        }
+        return mLoads.loadAsync(key, newLoad(key, loader, saveTime));
+    }
+
+    /**
+     * Return the value in cache without loading it, reloading it in the background if it is
+     * stale, see {@link #setRefreshAfterWrite(long, TimeUnit)}.
+     *
+     * @return the value if cache exists or null otherwise
+     */
+    <T> T getIfPresent(final String key,
+                       final CacheLoader<T> refresher,
+                       final int saveTime) {
+        CacheValue val = getLive(key);
+        if (val == null) return null;
+        refreshIfStale(val, refresher, saveTime);
+        return (T) val.value;
+    }
+
+    private CacheValue getLive(final String key) {
+        CacheValue val = mMemoryCache.get(key);
+        if (val == null) return null;
+        if (val.saveTime < 0) return val;
+        long now = SystemClock.elapsedRealtime();
+        if (val.dueTime >= now) {
+            // the wheel reschedules the value once its old due time comes up
+            if (val.expireAfterAccess) val.dueTime = now + val.saveTime;
+            return val;
+        }
+        mMemoryCache.remove(key, val);
+        return null;
+    }
+
+    private <T> void refreshIfStale(final CacheValue val,
+                                    final CacheLoader<T> refresher,
+                                    final int saveTime) {
+        long refreshAfterWrite = mRefreshAfterWrite;
+        if (refreshAfterWrite < 0) return;
+        long now = SystemClock.elapsedRealtime();
+        if (now - val.writeTime < refreshAfterWrite) return;
+        // the reads until the reload replaces the value don't start another, a failure
+        // leaves the old value in place until it is stale again
+        val.writeTime = now;
+        mLoads.refresh(val.key, newLoad(val.key, refresher, saveTime));
+    }
+
+    private <T> Callable<T> newLoad(final String key,
+                                    final CacheLoader<T> loader,
+                                    final int saveTime) {
+        return new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                T value = loader.load(key);
+                put(key, value, loader instanceof TierLoader
+                        ? ((TierLoader<T>) loader).saveTimeLeft(key, saveTime) : saveTime);
+                return value;
+            }
+        };
     }
 
     /**
@@ -119,7 +569,17 @@ public class LruMemoryCache {
      * @return the count of cache
      */
     public int getCacheCount() {
-        return mMemoryCache.size();
+        SlabStore offHeap = mOffHeap;
+        return mMemoryCache.count() + (offHeap == null ? 0 : offHeap.count());
+    }
+
+    /**
+     * Return the weight of cache, in bytes, or the count of cache if it isn't weighed.
+     *
+     * @return the weight of cache
+     */
+    public long getCacheSize() {
+        return mMemoryCache.weight();
     }
 
     /**
@@ -129,6 +589,8 @@ public class LruMemoryCache {
      * @return {@code true}: success<br>{@code false}: fail
      */
     public Object remove(@NonNull final String key) {
+        SlabStore offHeap = mOffHeap;
+        if (offHeap != null) offHeap.remove(key);
         CacheValue remove = mMemoryCache.remove(key);
         if (remove == null) return null;
         return remove.value;
@@ -138,16 +600,111 @@ public class LruMemoryCache {
      * Clear all of the cache.
      */
     public void clear() {
-        mMemoryCache.evictAll();
+        mMemoryCache.clear();
+        mTimerWheel.clear();
+        SlabStore offHeap = mOffHeap;
+        if (offHeap != null) offHeap.clear();
+    }
+
+    /**
+     * Periodically remove expired values on a low priority thread, instead of only when
+     * they are read.
+     *
+     * @param period The period between sweeps.
+     * @param unit   The unit of period.
+     */
+    public void startExpirySweeper(final long period, @NonNull final TimeUnit unit) {
+        mSweeper.start(period, unit);
+    }
+
+    /**
+     * Stop the periodic sweep started by {@link #startExpirySweeper(long, TimeUnit)}.
+     */
+    public void stopExpirySweeper() {
+        mSweeper.stop();
+    }
+
+    /**
+     * Remove every expired value now, on the caller's thread.
+     *
+     * @return the stats of the sweep
+     */
+    public SweepStats sweepExpired() {
+        return mSweeper.sweep();
+    }
+
+    /**
+     * Return the stats of the last sweep, periodic or not.
+     *
+     * @return the stats of the last sweep
+     */
+    public SweepStats getLastSweepStats() {
+        return mSweeper.getLastStats();
+    }
+
+    private long trimTo(final float fraction) {
+        long before = mMemoryCache.weight();
+        if (fraction <= 0f) clear();
+        mMemoryCache.resize(Math.max(1, (int) (mMaxSize * fraction)));
+        return Math.max(0, before - mMemoryCache.weight());
+    }
+
+    private SweepStats sweep() {
+        final long start = System.nanoTime();
+        List<TimerWheel.Node> expired = mTimerWheel.advance(SystemClock.elapsedRealtime());
+        int count = 0;
+        long bytes = 0;
+        for (TimerWheel.Node node : expired) {
+            CacheValue value = (CacheValue) node;
+            if (mMemoryCache.remove(value.key, value)) {
+                count++;
+                if (mWeigher != null) bytes += value.weight;
+            }
+        }
+        return new SweepStats(count, bytes, System.nanoTime() - start);
+    }
+
+    private void removeExpired(final List<TimerWheel.Node> expired) {
+        for (TimerWheel.Node node : expired) {
+            CacheValue value = (CacheValue) node;
+            mMemoryCache.remove(value.key, value);
+        }
+    }
+
+    /**
+     * A {@link CacheLoader} reading a tier below memory, whose values may have used up part
+     * of their save time there.
+     */
+    interface TierLoader<T> extends CacheLoader<T> {
+        /**
+         * Return the save time left of the value just loaded, in seconds.
+         *
+         * @param saveTime The save time of a value loaded afresh, in seconds.
+         */
+        int saveTimeLeft(String key, int saveTime);
     }
 
-    private static final class CacheValue {
-        long dueTime;
+    static final class CacheValue extends TimerWheel.Node {
+        final String key;
         Object value;
+        final int weight;
+        /**
+         * The save time, in milliseconds, -1 if the value doesn't expire.
+         */
+        final long saveTime;
+        final boolean expireAfterAccess;
+        /**
+         * The time of the put or of the last reload of the value, on the clock of the due
+         * time.
+         */
+        volatile long writeTime;
 
-        CacheValue(long dueTime, Object value) {
-            this.dueTime = dueTime;
+        CacheValue(String key, Object value, int weight, long saveTime, boolean expireAfterAccess) {
+            this.key = key;
             this.value = value;
+            this.weight = weight;
+            this.saveTime = saveTime;
+            this.expireAfterAccess = expireAfterAccess;
         }
     }
 }
@@ -0,0 +1,232 @@
+package com.jeff.jframework.tools.cache;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.MemoryCategory;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Shrink the registered caches on {@link ComponentCallbacks2} memory signals, and give them
+ * their capacity back once the signals stop.
+ * <p>
+ * The trim level picks a step: evict to 50%, to 25%, or clear. A cache of
+ * {@link Priority#LOW} is trimmed one step harder and one of {@link Priority#HIGH} one
+ * step softer, low priority caches go first. A step never loosens a deeper one, the
+ * capacity only comes back after {@link #RESTORE_DELAY_MS} without a signal.
+ * <p>
+ * Every {@link LruMemoryCache} registers itself, Glide registers on {@link #install(Context)}.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public final class MemoryGovernor {
+    private static final String TAG = "MemoryGovernor";
+    /**
+     * The fraction of capacity kept at each step.
+     */
+    private static final float[] FRACTIONS = {1f, 0.5f, 0.25f, 0f};
+    private static final int STEP_CLEAR = FRACTIONS.length - 1;
+    private static final long RESTORE_DELAY_MS = 60 * 1000L;
+
+    @IntDef({Priority.LOW, Priority.NORMAL, Priority.HIGH})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Priority {
+        /**
+         * Cheap to rebuild, trimmed first and one step harder
+         */
+        int LOW = 0;
+        int NORMAL = 1;
+        /**
+         * Costly to rebuild, trimmed last and one step softer
+         */
+        int HIGH = 2;
+    }
+
+    /**
+     * A cache the governor can shrink.
+     */
+    public interface Trimmable {
+
+        /**
+         * Resize to the fraction of the full capacity, evicting what no longer fits.
+         *
+         * @param fraction The fraction of the full capacity, 0 to clear, 1 to restore.
+         * @return the bytes reclaimed, or entries if the cache isn't weighed, -1 if unknown
+         */
+        long resize(float fraction);
+    }
+
+    private final CopyOnWriteArrayList<Registration> mRegistrations = new CopyOnWriteArrayList<>();
+    private final Runnable mRestore = new Runnable() {
+        @Override
+        public void run() {
+            trim(0, "restore");
+        }
+    };
+    private Handler mMainHandler;
+    /**
+     * The step applied, guarded by this.
+     */
+    private int mStep;
+
+    private static final class Holder {
+        private static final MemoryGovernor INSTANCE = new MemoryGovernor();
+    }
+
+    /**
+     * Return the single {@link MemoryGovernor} instance.
+     *
+     * @return the single {@link MemoryGovernor} instance
+     */
+    public static MemoryGovernor getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private MemoryGovernor() {
+    }
+
+    /**
+     * Listen to the memory signals of the app and register Glide, only the first call counts.
+     *
+     * @param context The context.
+     */
+    public synchronized void install(@NonNull final Context context) {
+        if (mMainHandler != null) return;
+        mMainHandler = new Handler(Looper.getMainLooper());
+        final Context appContext = context.getApplicationContext();
+        appContext.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                MemoryGovernor.this.onTrimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+                //no-op
+            }
+
+            @Override
+            public void onLowMemory() {
+                trim(STEP_CLEAR, "low memory");
+            }
+        });
+        register("glide", new Trimmable() {
+            @Override
+            public long resize(float fraction) {
+                // called on the main thread, Glide requires it
+                Glide glide = Glide.get(appContext);
+                if (fraction <= 0f) glide.clearMemory();
+                glide.setMemoryCategory(fraction < 1f ? MemoryCategory.LOW : MemoryCategory.NORMAL);
+                return -1;
+            }
+        }, Priority.NORMAL);
+    }
+
+    /**
+     * Register the cache, or change its priority if it is registered.
+     *
+     * @param name      The name of cache, for logs.
+     * @param trimmable The cache.
+     * @param priority  The priority of cache.
+     */
+    public void register(@NonNull final String name,
+                         @NonNull final Trimmable trimmable,
+                         @Priority final int priority) {
+        unregister(trimmable);
+        mRegistrations.add(new Registration(name, trimmable, priority));
+    }
+
+    public void unregister(@NonNull final Trimmable trimmable) {
+        for (Registration registration : mRegistrations) {
+            if (registration.trimmable == trimmable) mRegistrations.remove(registration);
+        }
+    }
+
+    /**
+     * Trim the caches as for the level, see {@link ComponentCallbacks2#onTrimMemory(int)}.
+     * Call it on the main thread.
+     *
+     * @param level The trim level.
+     */
+    public void onTrimMemory(final int level) {
+        trim(stepOf(level), "level " + level);
+    }
+
+    /**
+     * Give the caches their whole capacity back now.
+     */
+    public void restore() {
+        Handler handler;
+        synchronized (this) {
+            handler = mMainHandler;
+        }
+        if (handler == null) {
+            trim(0, "restore");
+        } else {
+            handler.removeCallbacks(mRestore);
+            handler.post(mRestore);
+        }
+    }
+
+    private static int stepOf(final int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_COMPLETE) return STEP_CLEAR;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) return 2;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) return 1;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) return STEP_CLEAR;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) return 2;
+        return 1;
+    }
+
+    private synchronized void trim(final int step, final String reason) {
+        if (step > 0) {
+            // the pressure goes on, push the restore back
+            if (mMainHandler != null) {
+                mMainHandler.removeCallbacks(mRestore);
+                mMainHandler.postDelayed(mRestore, RESTORE_DELAY_MS);
+            }
+            if (step <= mStep) return;
+        } else if (mStep == 0) {
+            return;
+        }
+        mStep = step;
+        long total = 0;
+        for (int priority = Priority.LOW; priority <= Priority.HIGH; priority++) {
+            for (Registration registration : mRegistrations) {
+                if (registration.priority != priority) continue;
+                int cacheStep = step == 0 ? 0
+                        : Math.max(0, Math.min(STEP_CLEAR, step + Priority.NORMAL - priority));
+                long reclaimed = registration.trimmable.resize(FRACTIONS[cacheStep]);
+                if (reclaimed > 0) total += reclaimed;
+                Log.d(TAG, reason + ": " + registration.name + " resized to "
+                        + FRACTIONS[cacheStep] + ", reclaimed " + (reclaimed < 0 ? "?" : reclaimed));
+            }
+        }
+        Log.i(TAG, reason + ": reclaimed " + total + " in " + mRegistrations.size() + " caches");
+    }
+
+    private static final class Registration {
+        final String name;
+        final Trimmable trimmable;
+        final int priority;
+
+        Registration(String name, Trimmable trimmable, int priority) {
+            this.name = name;
+            this.trimmable = trimmable;
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.jeff.jframework.tools.cache;
+
+/**
+ * The storage and eviction policy behind {@link LruMemoryCache}.
+ * <p>
+ * Entries are limited by the sum of {@link LruMemoryCache.CacheValue#weight}, which is 1
+ * per entry unless the cache is weighed.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+interface MemoryStore {
+
+    /**
+     * Told of every value which leaves the store, evicted, removed or replaced, except by
+     * {@link #clear()}.
+     */
+    interface RemovalListener {
+        void onRemoved(LruMemoryCache.CacheValue value);
+    }
+
+    /**
+     * Return the value and record the access.
+     */
+    LruMemoryCache.CacheValue get(String key);
+
+    /**
+     * @return the replaced value or null
+     */
+    LruMemoryCache.CacheValue put(String key, LruMemoryCache.CacheValue value);
+
+    /**
+     * @return the removed value or null
+     */
+    LruMemoryCache.CacheValue remove(String key);
+
+    /**
+     * Remove the entry only if it still holds the value.
+     */
+    boolean remove(String key, LruMemoryCache.CacheValue value);
+
+    void clear();
+
+    int count();
+
+    long weight();
+
+    /**
+     * Return the max weight of one entry, heavier values can't be stored.
+     */
+    int maxEntryWeight();
+
+    /**
+     * Change the max weight of the store, evicting down to it.
+     */
+    void resize(int maxWeight);
+}
@@ -0,0 +1,336 @@
+package com.jeff.jframework.tools.cache;
+
+import android.util.Log;
+
+import com.jeff.jframework.tools.CloseUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Log-structured storage of small {@link LruDiskCache} entries.
+ * <p>
+ * Small entries are appended to 4 MB segment files instead of getting a file each, which
+ * saves an inode, a directory entry and an open/close per entry. Every segment is
+ * memory-mapped, so appends and reads are plain memory copies. A record is encoded exactly
+ * like an entry file (see {@link DiskCacheHelper}), a removed entry is followed by a
+ * tombstone record so a segment scan doesn't resurrect it.
+ * <p>
+ * The location of every record is kept by the index of {@link DiskCacheManager}. Once less
+ * than half of a sealed segment is live its live records are copied to the active segment
+ * and the segment is deleted.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class PackStore {
+    private static final String TAG = "PackStore";
+
+    static final String PACK_DIR = "pack";
+    static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+    static final byte FLAG_TOMBSTONE = 0x01;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final float COMPACT_LIVE_RATIO = 0.5f;
+
+    private final File directory;
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private int nextId;
+    private boolean opened;
+
+    PackStore(final File cacheDir) {
+        directory = new File(cacheDir, PACK_DIR);
+    }
+
+    /**
+     * Register the segments left by earlier runs. They are sealed, new records always go to
+     * a new segment.
+     */
+    private void openIfNeeded() {
+        if (opened) return;
+        opened = true;
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            int id = idOf(file);
+            if (id < 0) continue;
+            if (!segments.containsKey(id)) segments.put(id, new Segment(id, file));
+            nextId = Math.max(nextId, id + 1);
+        }
+    }
+
+    synchronized boolean isEmpty() {
+        openIfNeeded();
+        return segments.isEmpty();
+    }
+
+    /**
+     * Append a record made of the remaining bytes of the buffers.
+     *
+     * @param record The index record to update with the location.
+     */
+    synchronized void append(final DiskJournal.Record record, final ByteBuffer... buffers)
+            throws IOException {
+        openIfNeeded();
+        int length = 0;
+        for (ByteBuffer buffer : buffers) length += buffer.remaining();
+        if (length > SEGMENT_SIZE) throw new IOException("record larger than a segment");
+        if (active == null || active.writePosition + length > SEGMENT_SIZE) {
+            rollSegment();
+        }
+        ByteBuffer target = active.buffer.duplicate();
+        target.position(active.writePosition);
+        for (ByteBuffer buffer : buffers) target.put(buffer.duplicate());
+        record.segment = active.id;
+        record.offset = active.writePosition;
+        active.writePosition += length;
+        active.liveBytes += length;
+    }
+
+    /**
+     * Append a tombstone for the entry.
+     *
+     * @param name The name of entry, see {@link DiskLayout#nameOf(String)}.
+     */
+    void appendTombstone(final String name) {
+        try {
+            byte[] nameBytes = name.getBytes("US-ASCII");
+            ByteBuffer header = DiskCacheHelper.newHeader(nameBytes, FLAG_TOMBSTONE,
+                    DiskCacheHelper.NO_EXPIRY, new byte[0]);
+            DiskJournal.Record tombstone = new DiskJournal.Record(header.remaining(), 0);
+            append(tombstone, header);
+            markDead(tombstone.segment, (int) tombstone.size);
+        } catch (IOException e) {
+            Log.w(TAG, "append tombstone failed: " + e.getMessage());
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        int id = nextId++;
+        Segment segment = new Segment(id, new File(directory, String.format(Locale.US, "%08d", id) + SEGMENT_SUFFIX));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("can't make dirs in " + directory.getAbsolutePath());
+        }
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(segment.file, "rw");
+            // the file is extended sparsely, untouched pages take no space on disk
+            segment.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+        } finally {
+            CloseUtils.closeIOQuietly(raf);
+        }
+        segments.put(id, segment);
+        active = segment;
+    }
+
+    /**
+     * Return a view of the record, the view stays valid even if the segment gets compacted.
+     *
+     * @return the view or null if the segment is gone
+     */
+    synchronized ByteBuffer view(final int segmentId, final int offset, final int length) {
+        openIfNeeded();
+        Segment segment = segments.get(segmentId);
+        if (segment == null) return null;
+        try {
+            MappedByteBuffer buffer = segment.map();
+            if (offset < 0 || offset + length > buffer.capacity()) return null;
+            ByteBuffer view = buffer.duplicate();
+            view.limit(offset + length).position(offset);
+            return view.slice();
+        } catch (IOException e) {
+            Log.w(TAG, "map segment failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    synchronized void markLive(final int segmentId, final long length) {
+        openIfNeeded();
+        Segment segment = segments.get(segmentId);
+        if (segment != null) segment.liveBytes += length;
+    }
+
+    synchronized void markDead(final int segmentId, final long length) {
+        Segment segment = segments.get(segmentId);
+        if (segment != null) segment.liveBytes -= length;
+    }
+
+    /**
+     * Return the sealed segments of which less than half is live.
+     */
+    synchronized List<Integer> segmentsToCompact() {
+        openIfNeeded();
+        List<Integer> ids = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            if (segment == active) continue;
+            if (segment.liveBytes < SEGMENT_SIZE * COMPACT_LIVE_RATIO) ids.add(segment.id);
+        }
+        return ids;
+    }
+
+    /**
+     * Append the tombstones of a segment about to be deleted again, as long as an older
+     * segment may still hold the records they bury.
+     */
+    void carryTombstones(final int segmentId) {
+        List<String> names = new ArrayList<>();
+        synchronized (this) {
+            Segment segment = segments.get(segmentId);
+            if (segment == null || segments.firstKey() == segmentId) return;
+            ByteBuffer buffer;
+            try {
+                buffer = segment.map().duplicate();
+            } catch (IOException e) {
+                Log.w(TAG, "map segment failed: " + e.getMessage());
+                return;
+            }
+            DiskCacheHelper.Header header;
+            while ((header = next(buffer)) != null) {
+                if ((header.flags & FLAG_TOMBSTONE) != 0) names.add(asciiOf(header.key));
+            }
+        }
+        for (String name : names) {
+            appendTombstone(name);
+        }
+    }
+
+    /**
+     * Read the header of the record at the position of the buffer and skip the record.
+     *
+     * @return the header or null at the zeroed tail of the segment
+     */
+    private static DiskCacheHelper.Header next(final ByteBuffer buffer) {
+        int offset = buffer.position();
+        DiskCacheHelper.Header header;
+        try {
+            header = DiskCacheHelper.readHeader(buffer);
+        } catch (IOException e) {
+            return null;
+        }
+        if (header == null) return null;
+        buffer.position(offset + header.payloadOffset() + header.payloadLength);
+        return header;
+    }
+
+    synchronized void deleteSegment(final int segmentId) {
+        Segment segment = segments.remove(segmentId);
+        if (segment == null) return;
+        if (segment == active) active = null;
+        // readers still holding a view keep the mapping alive
+        segment.file.delete();
+    }
+
+    synchronized void clear() {
+        openIfNeeded();
+        for (Segment segment : segments.values()) {
+            segment.file.delete();
+        }
+        segments.clear();
+        active = null;
+    }
+
+    /**
+     * Rebuild the records of every segment by scanning them, used when the journal is lost.
+     *
+     * @return the live records by entry name, in append order
+     */
+    synchronized Map<String, DiskJournal.Record> scan() {
+        openIfNeeded();
+        Map<String, DiskJournal.Record> records = new LinkedHashMap<>();
+        for (Segment segment : segments.values()) {
+            ByteBuffer buffer;
+            try {
+                buffer = segment.map().duplicate();
+            } catch (IOException e) {
+                Log.w(TAG, "map segment failed: " + e.getMessage());
+                continue;
+            }
+            long lastModified = segment.file.lastModified();
+            while (true) {
+                int offset = buffer.position();
+                DiskCacheHelper.Header header = next(buffer);
+                // the zeroed tail of the segment ends the scan
+                if (header == null) break;
+                int length = buffer.position() - offset;
+                if ((header.flags & FLAG_TOMBSTONE) != 0) {
+                    records.remove(asciiOf(header.key));
+                    continue;
+                }
+                String name = DiskLayout.nameOf(utf8Of(header.key));
+                DiskJournal.Record record = new DiskJournal.Record(length, lastModified);
+                record.expiry = header.expiry;
+                record.segment = segment.id;
+                record.offset = offset;
+                records.remove(name);
+                records.put(name, record);
+            }
+        }
+        return records;
+    }
+
+    private static String asciiOf(final byte[] bytes) {
+        try {
+            return new String(bytes, "US-ASCII");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String utf8Of(final byte[] bytes) {
+        try {
+            return new String(bytes, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int idOf(final File file) {
+        String name = file.getName();
+        if (!name.endsWith(SEGMENT_SUFFIX)) return -1;
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final class Segment {
+        final int id;
+        final File file;
+        MappedByteBuffer buffer;
+        int writePosition;
+        long liveBytes;
+
+        Segment(final int id, final File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        MappedByteBuffer map() throws IOException {
+            if (buffer != null) return buffer;
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(file, "r");
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                return buffer;
+            } finally {
+                CloseUtils.closeIOQuietly(raf);
+            }
+        }
+    }
+}
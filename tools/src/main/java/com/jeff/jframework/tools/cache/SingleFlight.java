@@ -0,0 +1,171 @@
+package com.jeff.jframework.tools.cache;
+
+import android.util.Log;
+
+import com.jeff.jframework.tools.ThreadUtils;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The loads of a cache in flight, by key.
+ * <p>
+ * A load of a key which is already loading joins the running load instead of starting
+ * another, so a burst of misses costs a single computation. A load leaves the map once it
+ * completes, a failure reaches the callers which joined it and the next load of the key
+ * starts afresh. Each caller of {@link #loadAsync(String, Callable)} gets a future of its
+ * own, cancelling it detaches the caller and leaves the load running for the others.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class SingleFlight {
+    private static final String TAG = "SingleFlight";
+    private static final int MAX_LOADERS = 4;
+
+    private static final Runnable NOTHING = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    private static volatile ThreadPoolExecutor sLoader;
+
+    private final ConcurrentHashMap<String, Load<?>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Run the load on the caller's thread, or wait for the running load of the key.
+     */
+    <T> T load(final String key, final Callable<T> callable) throws ExecutionException {
+        Load<T> load = new Load<>(key, callable);
+        Load<T> running = join(key, load);
+        if (running == load) load.run();
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExecutionException(e);
+        }
+    }
+
+    /**
+     * Run the load on a loader thread, or join the running load of the key.
+     *
+     * @return a future of the caller's own, which completes with the load
+     */
+    <T> Future<T> loadAsync(final String key, final Callable<T> callable) {
+        Load<T> load = new Load<>(key, callable);
+        Load<T> running = join(key, load);
+        if (running == load) loader().execute(load);
+        Caller<T> caller = new Caller<>();
+        running.addCaller(caller);
+        return caller;
+    }
+
+    /**
+     * Run the load on a loader thread unless the key is already loading, without waiting for
+     * it or keeping track of the caller.
+     */
+    <T> void refresh(final String key, final Callable<T> callable) {
+        Load<T> load = new Load<>(key, callable);
+        if (join(key, load) == load) loader().execute(load);
+    }
+
+    /**
+     * Return a future of a value at hand.
+     */
+    static <T> Future<T> completed(final T value) {
+        FutureTask<T> task = new FutureTask<>(NOTHING, value);
+        task.run();
+        return task;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Load<T> join(final String key, final Load<T> load) {
+        Load<?> running = inFlight.putIfAbsent(key, load);
+        return running == null ? load : (Load<T>) running;
+    }
+
+    private static ThreadPoolExecutor loader() {
+        if (sLoader == null) {
+            synchronized (SingleFlight.class) {
+                if (sLoader == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_LOADERS, MAX_LOADERS,
+                            60L, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(),
+                            ThreadUtils.createThreadFactory("cacheLoader", Thread.NORM_PRIORITY - 1));
+                    executor.allowCoreThreadTimeOut(true);
+                    sLoader = executor;
+                }
+            }
+        }
+        return sLoader;
+    }
+
+    private final class Load<T> extends FutureTask<T> {
+        private final String key;
+        private final List<Caller<T>> callers = new CopyOnWriteArrayList<>();
+
+        Load(final String key, final Callable<T> callable) {
+            super(callable);
+            this.key = key;
+        }
+
+        void addCaller(final Caller<T> caller) {
+            callers.add(caller);
+            // done may have passed the callers already, completing twice is harmless
+            if (isDone()) caller.complete(this);
+        }
+
+        @Override
+        protected void done() {
+            inFlight.remove(key, this);
+            for (Caller<T> caller : callers) {
+                caller.complete(this);
+            }
+            callers.clear();
+            if (isCancelled()) return;
+            try {
+                get();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "load of " + key + " failed", e.getCause());
+            } catch (InterruptedException ignore) {
+                // done, get doesn't wait
+            }
+        }
+    }
+
+    /**
+     * The future of one caller of a load, cancelling it leaves the load running.
+     */
+    private static final class Caller<T> extends FutureTask<T> {
+
+        Caller() {
+            super(NOTHING, null);
+        }
+
+        void complete(final Future<T> load) {
+            try {
+                set(load.get());
+            } catch (ExecutionException e) {
+                setException(e.getCause());
+            } catch (CancellationException e) {
+                cancel(false);
+            } catch (InterruptedException ignore) {
+                // done, get doesn't wait
+            }
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package com.jeff.jframework.tools.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Byte values of {@link LruMemoryCache} kept in direct memory, out of the reach of the GC.
+ * <p>
+ * Memory is allocated in slabs of 1MB, each cut into chunks of one size class, the sizes
+ * growing by a quarter from 64 bytes up to a whole slab. A value takes a chunk of the
+ * smallest class it fits in. Each class evicts its own least recently used values when it
+ * runs out of chunks and no slab is left, and a class without any value takes a slab from
+ * the class holding the most slabs.
+ * <p>
+ * A value is read through a view of its chunk, pinned until it is released: the chunk of a
+ * pinned value which is removed or evicted is freed on release, and a slab holding pinned
+ * chunks isn't moved to another class.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class SlabStore {
+    static final int SLAB_SIZE = 1 << 20;
+    private static final int MIN_CHUNK_SIZE = 64;
+
+    private final ByteBuffer[] slabs;
+    /**
+     * The size class of each slab.
+     */
+    private final int[] slabClasses;
+    /**
+     * The pins of the values of each slab.
+     */
+    private final int[] slabPins;
+    private int slabCount;
+    private final SizeClass[] classes;
+    private final HashMap<String, Entry> map = new HashMap<>();
+    private long usedBytes;
+
+    /**
+     * @param maxBytes The max bytes of direct memory, rounded down to whole slabs, one at
+     *                 least.
+     */
+    SlabStore(final int maxBytes) {
+        int count = Math.max(1, maxBytes / SLAB_SIZE);
+        slabs = new ByteBuffer[count];
+        slabClasses = new int[count];
+        slabPins = new int[count];
+        List<SizeClass> sizes = new ArrayList<>();
+        int size = MIN_CHUNK_SIZE;
+        while (size < SLAB_SIZE) {
+            sizes.add(new SizeClass(sizes.size(), size));
+            // grow by a quarter, aligned to 8 bytes
+            size = (size + (size >> 2) + 7) & ~7;
+        }
+        sizes.add(new SizeClass(sizes.size(), SLAB_SIZE));
+        classes = sizes.toArray(new SizeClass[0]);
+    }
+
+    /**
+     * Copy the bytes into a chunk, replacing the value of the key.
+     *
+     * @param dueTime The time the value expires, -1 if never.
+     * @return false if the value can't be stored, larger than a slab for one
+     */
+    synchronized boolean put(final String key, final byte[] value, final long dueTime) {
+        remove(key);
+        if (value.length > SLAB_SIZE) return false;
+        SizeClass sizeClass = classes[classOf(value.length)];
+        long chunk = allocate(sizeClass);
+        if (chunk < 0) return false;
+        Entry entry = new Entry(key, sizeClass, chunk, value.length, dueTime);
+        ByteBuffer slab = slabs[entry.slab()].duplicate();
+        slab.position(entry.offset());
+        slab.put(value);
+        map.put(key, entry);
+        sizeClass.addFirst(entry);
+        usedBytes += value.length;
+        return true;
+    }
+
+    /**
+     * Pin the value and return a read-only view of it, valid until {@link Pinned#release()}.
+     *
+     * @param now The current time, on the clock of the due times.
+     */
+    synchronized Pinned pin(final String key, final long now) {
+        Entry entry = map.get(key);
+        if (entry == null) return null;
+        if (entry.dueTime >= 0 && entry.dueTime < now) {
+            remove(key);
+            return null;
+        }
+        entry.sizeClass.unlink(entry);
+        entry.sizeClass.addFirst(entry);
+        entry.pins++;
+        slabPins[entry.slab()]++;
+        ByteBuffer view = slabs[entry.slab()].duplicate();
+        view.limit(entry.offset() + entry.length);
+        view.position(entry.offset());
+        return new Pinned(entry, view.slice().asReadOnlyBuffer());
+    }
+
+    private synchronized void unpin(final Pinned pinned) {
+        if (pinned.released) return;
+        pinned.released = true;
+        Entry entry = pinned.entry;
+        slabPins[entry.slab()]--;
+        if (--entry.pins == 0 && entry.removed) {
+            entry.sizeClass.pushFree(entry.chunk);
+        }
+    }
+
+    synchronized boolean remove(final String key) {
+        Entry entry = map.remove(key);
+        if (entry == null) return false;
+        free(entry);
+        return true;
+    }
+
+    synchronized void clear() {
+        map.clear();
+        for (SizeClass sizeClass : classes) {
+            // the slabs keep their class, the chunks of pinned values are freed on release
+            while (sizeClass.head != null) {
+                free(sizeClass.head);
+            }
+        }
+    }
+
+    synchronized int count() {
+        return map.size();
+    }
+
+    /**
+     * Return the bytes of the values, without the slack of their chunks.
+     */
+    synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    private int classOf(final int length) {
+        int low = 0;
+        int high = classes.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (classes[mid].chunkSize < length) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private long allocate(final SizeClass sizeClass) {
+        if (sizeClass.freeCount == 0) {
+            if (slabCount < slabs.length) {
+                slabs[slabCount] = ByteBuffer.allocateDirect(SLAB_SIZE);
+                slabClasses[slabCount] = sizeClass.index;
+                sizeClass.carve(slabCount++);
+            } else if (sizeClass.tail != null) {
+                // the chunks of pinned values are freed later, evict on to a free one
+                while (sizeClass.freeCount == 0 && sizeClass.tail != null) {
+                    Entry eldest = sizeClass.tail;
+                    map.remove(eldest.key);
+                    free(eldest);
+                }
+            } else if (!reassignSlab(sizeClass)) {
+                return -1;
+            }
+        }
+        return sizeClass.freeCount == 0 ? -1 : sizeClass.free[--sizeClass.freeCount];
+    }
+
+    /**
+     * Move a slab of the class holding the most slabs to the class, evicting its values. A slab
+     * holding pinned values isn't moved.
+     */
+    private boolean reassignSlab(final SizeClass target) {
+        SizeClass donor = null;
+        for (SizeClass sizeClass : classes) {
+            if (sizeClass != target && (donor == null || sizeClass.slabs > donor.slabs)) {
+                donor = sizeClass;
+            }
+        }
+        if (donor == null || donor.slabs == 0) return false;
+        int slab = -1;
+        for (int i = 0; i < slabCount; i++) {
+            if (slabClasses[i] == donor.index && slabPins[i] == 0) {
+                slab = i;
+                break;
+            }
+        }
+        if (slab < 0) return false;
+        for (Entry entry = donor.head; entry != null; ) {
+            Entry next = entry.next;
+            if (entry.slab() == slab) {
+                map.remove(entry.key);
+                donor.unlink(entry);
+                usedBytes -= entry.length;
+            }
+            entry = next;
+        }
+        donor.dropChunksOf(slab);
+        slabClasses[slab] = target.index;
+        target.carve(slab);
+        return true;
+    }
+
+    private void free(final Entry entry) {
+        entry.sizeClass.unlink(entry);
+        entry.removed = true;
+        if (entry.pins == 0) entry.sizeClass.pushFree(entry.chunk);
+        usedBytes -= entry.length;
+    }
+
+    private static long chunkOf(final int slab, final int offset) {
+        return ((long) slab << 32) | offset;
+    }
+
+    private static int slabOf(final long chunk) {
+        return (int) (chunk >>> 32);
+    }
+
+    /**
+     * The chunks of one size: a stack of the free ones and an LRU list of the used ones.
+     */
+    private static final class SizeClass {
+        final int index;
+        final int chunkSize;
+        final int chunksPerSlab;
+        long[] free = new long[0];
+        int freeCount;
+        int slabs;
+        /**
+         * The most recently used entry.
+         */
+        Entry head;
+        Entry tail;
+
+        SizeClass(final int index, final int chunkSize) {
+            this.index = index;
+            this.chunkSize = chunkSize;
+            chunksPerSlab = SLAB_SIZE / chunkSize;
+        }
+
+        void carve(final int slab) {
+            slabs++;
+            for (int i = chunksPerSlab - 1; i >= 0; i--) {
+                pushFree(chunkOf(slab, i * chunkSize));
+            }
+        }
+
+        void pushFree(final long chunk) {
+            if (freeCount == free.length) {
+                long[] grown = new long[Math.max(chunksPerSlab, free.length * 2)];
+                System.arraycopy(free, 0, grown, 0, freeCount);
+                free = grown;
+            }
+            free[freeCount++] = chunk;
+        }
+
+        void dropChunksOf(final int slab) {
+            int kept = 0;
+            for (int i = 0; i < freeCount; i++) {
+                if (slabOf(free[i]) != slab) free[kept++] = free[i];
+            }
+            freeCount = kept;
+            slabs--;
+        }
+
+        void addFirst(final Entry entry) {
+            entry.prev = null;
+            entry.next = head;
+            if (head == null) {
+                tail = entry;
+            } else {
+                head.prev = entry;
+            }
+            head = entry;
+        }
+
+        void unlink(final Entry entry) {
+            if (entry.prev == null) {
+                head = entry.next;
+            } else {
+                entry.prev.next = entry.next;
+            }
+            if (entry.next == null) {
+                tail = entry.prev;
+            } else {
+                entry.next.prev = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+        }
+
+    }
+
+    /**
+     * A read-only view of a pinned value.
+     */
+    final class Pinned {
+        private final Entry entry;
+        final ByteBuffer buffer;
+        private boolean released;
+
+        Pinned(final Entry entry, final ByteBuffer buffer) {
+            this.entry = entry;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Unpin the value, the view mustn't be used afterwards.
+         */
+        void release() {
+            unpin(this);
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final SizeClass sizeClass;
+        final long chunk;
+        final int length;
+        final long dueTime;
+        int pins;
+        boolean removed;
+        Entry prev;
+        Entry next;
+
+        Entry(final String key, final SizeClass sizeClass, final long chunk, final int length,
+              final long dueTime) {
+            this.key = key;
+            this.sizeClass = sizeClass;
+            this.chunk = chunk;
+            this.length = length;
+            this.dueTime = dueTime;
+        }
+
+        int slab() {
+            return slabOf(chunk);
+        }
+
+        int offset() {
+            return (int) chunk;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.jeff.jframework.tools.cache;
+
+import java.util.Locale;
+
+/**
+ * The outcome of one sweep of expired cache entries.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public final class SweepStats {
+    static final SweepStats EMPTY = new SweepStats(0, 0, 0);
+
+    private final int entries;
+    private final long bytes;
+    private final long durationNanos;
+
+    SweepStats(final int entries, final long bytes, final long durationNanos) {
+        this.entries = entries;
+        this.bytes = bytes;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Return the count of expired entries removed.
+     */
+    public int getEntries() {
+        return entries;
+    }
+
+    /**
+     * Return the bytes reclaimed, 0 if the cache doesn't weigh its entries.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Return how long the sweep took, in milliseconds.
+     */
+    public long getDurationMillis() {
+        return durationNanos / 1000000L;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "SweepStats{entries=%d, bytes=%d, duration=%.3fms}",
+                entries, bytes, durationNanos / 1e6);
+    }
+}
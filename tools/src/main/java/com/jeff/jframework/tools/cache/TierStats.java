@@ -0,0 +1,68 @@
+package com.jeff.jframework.tools.cache;
+
+import java.util.Locale;
+
+/**
+ * Where the reads of a {@link LruDoubleCache} were served from.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public final class TierStats {
+    private final long memoryHits;
+    private final long diskHits;
+    private final long misses;
+    private final long promotions;
+
+    TierStats(final long memoryHits, final long diskHits, final long misses, final long promotions) {
+        this.memoryHits = memoryHits;
+        this.diskHits = diskHits;
+        this.misses = misses;
+        this.promotions = promotions;
+    }
+
+    /**
+     * Return the count of reads served from memory, pending write-backs included.
+     */
+    public long getMemoryHits() {
+        return memoryHits;
+    }
+
+    /**
+     * Return the count of reads which missed memory.
+     */
+    public long getMemoryMisses() {
+        return diskHits + misses;
+    }
+
+    /**
+     * Return the count of reads served from disk.
+     */
+    public long getDiskHits() {
+        return diskHits;
+    }
+
+    /**
+     * Return the count of reads which missed both tiers.
+     */
+    public long getDiskMisses() {
+        return misses;
+    }
+
+    /**
+     * Return the count of disk hits copied into memory.
+     */
+    public long getPromotions() {
+        return promotions;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "TierStats{memoryHits=%d, diskHits=%d, misses=%d, promotions=%d}",
+                memoryHits, diskHits, misses, promotions);
+    }
+}
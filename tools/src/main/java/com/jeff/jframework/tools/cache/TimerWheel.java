@@ -0,0 +1,170 @@
+package com.jeff.jframework.tools.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A hierarchical timer wheel of the due times of {@link LruMemoryCache} entries.
+ * <p>
+ * Levels of buckets span about a second, a minute, an hour, a day and several days. A node
+ * lands in the finest level whose span covers its remaining time and cascades to finer
+ * levels as time advances, so scheduling, descheduling and expiring a node are O(1)
+ * amortised. Times are in milliseconds of a monotonic clock.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class TimerWheel {
+    private static final int[] BUCKETS = {64, 64, 32, 4, 1};
+    /**
+     * The tick of each level, 2^shift milliseconds.
+     */
+    private static final int[] SHIFTS = {10, 16, 22, 26, 28};
+
+    /**
+     * A node of the wheel, linked in one bucket at most. Guarded by the wheel.
+     */
+    static class Node {
+        /**
+         * The due time, may move later without the wheel's lock, the node is rescheduled
+         * instead of expired once its bucket comes up.
+         */
+        volatile long dueTime;
+        Node prev;
+        Node next;
+    }
+
+    private final Node[][] wheel;
+    /**
+     * Written under the wheel's lock, read without it to skip advances within a tick.
+     */
+    private volatile long time;
+
+    TimerWheel(final long now) {
+        time = now;
+        wheel = new Node[BUCKETS.length][];
+        for (int i = 0; i < BUCKETS.length; i++) {
+            wheel[i] = new Node[BUCKETS[i]];
+            for (int j = 0; j < BUCKETS[i]; j++) {
+                Node sentinel = new Node();
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                wheel[i][j] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Schedule the node at its due time, moving it if it is scheduled already.
+     */
+    synchronized void schedule(final Node node) {
+        if (node.next != null) unlink(node);
+        link(findBucket(node.dueTime), node);
+    }
+
+    synchronized void deschedule(final Node node) {
+        if (node.next != null) unlink(node);
+    }
+
+    /**
+     * Advance the wheel to now. An advance within the tick of the last one expires nothing,
+     * it returns without taking the lock, so callers on every write don't contend for it.
+     *
+     * @return the nodes due by now, descheduled
+     */
+    List<Node> advance(final long now) {
+        if (now >>> SHIFTS[0] <= time >>> SHIFTS[0]) return Collections.emptyList();
+        return advanceLocked(now);
+    }
+
+    private synchronized List<Node> advanceLocked(final long now) {
+        long previous = time;
+        if (now <= previous) return Collections.emptyList();
+        time = now;
+        List<Node> expired = new ArrayList<>();
+        for (int i = 0; i < SHIFTS.length; i++) {
+            long previousTicks = previous >>> SHIFTS[i];
+            long currentTicks = now >>> SHIFTS[i];
+            if (currentTicks == previousTicks) break;
+            expire(i, previousTicks, currentTicks - previousTicks, expired);
+        }
+        return expired;
+    }
+
+    synchronized void clear() {
+        for (Node[] buckets : wheel) {
+            for (Node sentinel : buckets) {
+                Node node = sentinel.next;
+                while (node != sentinel) {
+                    Node next = node.next;
+                    node.prev = null;
+                    node.next = null;
+                    node = next;
+                }
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Empty the buckets of the level the ticks passed over, expiring the due nodes and
+     * cascading the others to the buckets of their remaining time.
+     */
+    private void expire(final int level, final long previousTicks, final long delta,
+                        final List<Node> expired) {
+        Node[] buckets = wheel[level];
+        int mask = buckets.length - 1;
+        int steps = (int) Math.min(1 + delta, buckets.length);
+        int start = (int) (previousTicks & mask);
+        for (int i = start; i < start + steps; i++) {
+            Node sentinel = buckets[i & mask];
+            Node node = sentinel.next;
+            sentinel.prev = sentinel;
+            sentinel.next = sentinel;
+            while (node != sentinel) {
+                Node next = node.next;
+                node.prev = null;
+                node.next = null;
+                if (node.dueTime <= time) {
+                    expired.add(node);
+                } else {
+                    link(findBucket(node.dueTime), node);
+                }
+                node = next;
+            }
+        }
+    }
+
+    private Node findBucket(final long dueTime) {
+        // a node already due goes to the current bucket, which the next advance empties
+        long due = Math.max(dueTime, time);
+        long duration = due - time;
+        int last = BUCKETS.length - 1;
+        for (int i = 0; i < last; i++) {
+            if (duration < 1L << SHIFTS[i + 1]) {
+                long ticks = due >>> SHIFTS[i];
+                return wheel[i][(int) (ticks & (BUCKETS[i] - 1))];
+            }
+        }
+        return wheel[last][0];
+    }
+
+    private static void link(final Node sentinel, final Node node) {
+        node.prev = sentinel.prev;
+        node.next = sentinel;
+        sentinel.prev.next = node;
+        sentinel.prev = node;
+    }
+
+    private static void unlink(final Node node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+}
@@ -0,0 +1,414 @@
+package com.jeff.jframework.tools.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link MemoryStore} striped into segments, each with a W-TinyLFU policy.
+ * <p>
+ * Reads don't lock: a hit is looked up in a {@link ConcurrentHashMap} and recorded in a
+ * small lossy buffer of its segment, replayed into the policy by whichever thread next
+ * holds the segment lock. Writes lock only their segment.
+ * <p>
+ * New entries enter a small LRU window. An entry pushed out of the window only stays if
+ * the {@link FrequencySketch} rates it more popular than the eldest entry of the main
+ * space, so a one-off scan can't flush the hot set. The main space is a segmented LRU:
+ * entries hit while on probation move to the protected part.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class TinyLfuStore implements MemoryStore {
+    private static final int MAX_SEGMENTS = 8;
+    /**
+     * The min count of entries of a segment of a count limited store, a smaller policy
+     * can't tell hot entries apart.
+     */
+    private static final int MIN_SEGMENT_COUNT = 64;
+    private static final int READ_BUFFER_SIZE = 16;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int DEAD = 3;
+
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    /**
+     * @param maxWeight The max weight of the store.
+     * @param weighed   Whether entries weigh more than 1, which makes the count of entries
+     *                  unknown.
+     */
+    TinyLfuStore(final int maxWeight, final boolean weighed, final RemovalListener listener) {
+        int count = Integer.highestOneBit(
+                Math.min(MAX_SEGMENTS, Runtime.getRuntime().availableProcessors()));
+        if (!weighed) {
+            while (count > 1 && maxWeight / count < MIN_SEGMENT_COUNT) count >>= 1;
+        }
+        segments = new Segment[count];
+        int capacity = weighed ? Math.max(MIN_SEGMENT_COUNT, maxWeight / 4096) : maxWeight;
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxWeight / count, capacity / count, listener);
+        }
+        segmentShift = 32 - Integer.numberOfTrailingZeros(count);
+    }
+
+    static int spread(final String key) {
+        int h = key.hashCode();
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        return h;
+    }
+
+    private Segment segmentFor(final int hash) {
+        // the high bits pick the segment, the sketch hashes the whole value
+        return segments.length == 1 ? segments[0] : segments[hash >>> segmentShift];
+    }
+
+    @Override
+    public LruMemoryCache.CacheValue get(final String key) {
+        int hash = spread(key);
+        Segment segment = segmentFor(hash);
+        Node node = segment.map.get(key);
+        if (node == null) return null;
+        segment.recordRead(node);
+        return node.value;
+    }
+
+    @Override
+    public LruMemoryCache.CacheValue put(final String key, final LruMemoryCache.CacheValue value) {
+        int hash = spread(key);
+        return segmentFor(hash).put(key, hash, value);
+    }
+
+    @Override
+    public LruMemoryCache.CacheValue remove(final String key) {
+        return segmentFor(spread(key)).remove(key, null);
+    }
+
+    @Override
+    public boolean remove(final String key, final LruMemoryCache.CacheValue value) {
+        return segmentFor(spread(key)).remove(key, value) != null;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    @Override
+    public int count() {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.map.size();
+        }
+        return count;
+    }
+
+    @Override
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight;
+        }
+        return weight;
+    }
+
+    @Override
+    public int maxEntryWeight() {
+        return segments[0].maxWeight;
+    }
+
+    @Override
+    public void resize(final int maxWeight) {
+        for (Segment segment : segments) {
+            segment.resize(maxWeight / segments.length);
+        }
+    }
+
+    private static final class Node {
+        final String key;
+        final int hash;
+        volatile LruMemoryCache.CacheValue value;
+        /**
+         * The queue the node is in, guarded by the segment lock.
+         */
+        int queue = WINDOW;
+        Node prev;
+        Node next;
+
+        Node(final String key, final int hash, final LruMemoryCache.CacheValue value) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    /**
+     * An access ordered queue of nodes, eldest first.
+     */
+    private static final class AccessQueue {
+        Node head;
+        Node tail;
+        long weight;
+
+        void add(final Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            weight += node.value.weight;
+        }
+
+        void unlink(final Node node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            weight -= node.value.weight;
+        }
+
+        void moveToTail(final Node node) {
+            if (node == tail) return;
+            unlink(node);
+            add(node);
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            weight = 0;
+        }
+    }
+
+    private static final class Segment {
+        final ConcurrentHashMap<String, Node> map = new ConcurrentHashMap<>();
+        final ReentrantLock lock = new ReentrantLock();
+        final AtomicReferenceArray<Node> readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        final AtomicInteger readCount = new AtomicInteger();
+        final FrequencySketch sketch;
+        final RemovalListener listener;
+        /**
+         * Written under the lock.
+         */
+        volatile int maxWeight;
+        long maxWindowWeight;
+        long maxProtectedWeight;
+        final AccessQueue window = new AccessQueue();
+        final AccessQueue probation = new AccessQueue();
+        final AccessQueue protect = new AccessQueue();
+        /**
+         * Guarded by lock, read without it for stats.
+         */
+        volatile long weight;
+
+        Segment(final int maxWeight, final int capacity, final RemovalListener listener) {
+            this.listener = listener;
+            sketch = new FrequencySketch(capacity);
+            setMaxWeight(maxWeight);
+        }
+
+        private void setMaxWeight(final int maxWeight) {
+            this.maxWeight = Math.max(1, maxWeight);
+            // 1% window, the main space is 20% probation and 80% protected
+            maxWindowWeight = Math.max(1, this.maxWeight / 100);
+            maxProtectedWeight = (this.maxWeight - maxWindowWeight) * 4 / 5;
+        }
+
+        void resize(final int maxWeight) {
+            lock.lock();
+            try {
+                setMaxWeight(maxWeight);
+                while (protect.weight > maxProtectedWeight && protect.head != null) {
+                    Node demoted = protect.head;
+                    protect.unlink(demoted);
+                    demoted.queue = PROBATION;
+                    probation.add(demoted);
+                }
+                evict();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void recordRead(final Node node) {
+            int index = readCount.getAndIncrement() & READ_BUFFER_MASK;
+            // lossy: a slot not drained yet is overwritten, recency is a hint
+            readBuffer.lazySet(index, node);
+            if (index == READ_BUFFER_MASK && lock.tryLock()) {
+                try {
+                    drainReads();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+
+        /**
+         * Must hold the lock.
+         */
+        private void drainReads() {
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                Node node = readBuffer.getAndSet(i, null);
+                if (node != null) onAccess(node);
+            }
+        }
+
+        private void onAccess(final Node node) {
+            switch (node.queue) {
+                case WINDOW:
+                    window.moveToTail(node);
+                    break;
+                case PROBATION:
+                    probation.unlink(node);
+                    node.queue = PROTECTED;
+                    protect.add(node);
+                    while (protect.weight > maxProtectedWeight && protect.head != node) {
+                        Node demoted = protect.head;
+                        protect.unlink(demoted);
+                        demoted.queue = PROBATION;
+                        probation.add(demoted);
+                    }
+                    break;
+                case PROTECTED:
+                    protect.moveToTail(node);
+                    break;
+                default:
+                    // removed since it was read
+                    return;
+            }
+            sketch.increment(node.hash);
+        }
+
+        LruMemoryCache.CacheValue put(final String key,
+                                      final int hash,
+                                      final LruMemoryCache.CacheValue value) {
+            lock.lock();
+            try {
+                drainReads();
+                sketch.increment(hash);
+                Node node = map.get(key);
+                LruMemoryCache.CacheValue previous = null;
+                if (node != null) {
+                    previous = node.value;
+                    AccessQueue queue = queueOf(node);
+                    queue.unlink(node);
+                    node.value = value;
+                    queue.add(node);
+                } else {
+                    node = new Node(key, hash, value);
+                    map.put(key, node);
+                    window.add(node);
+                }
+                weight += value.weight - (previous == null ? 0 : previous.weight);
+                if (previous != null) listener.onRemoved(previous);
+                evict();
+                return previous;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Remove the entry of the key, only if it holds the value unless that is null.
+         */
+        LruMemoryCache.CacheValue remove(final String key, final LruMemoryCache.CacheValue value) {
+            lock.lock();
+            try {
+                Node node = map.get(key);
+                if (node == null || (value != null && node.value != value)) return null;
+                unlink(node);
+                return node.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                for (Node node : map.values()) {
+                    node.queue = DEAD;
+                }
+                map.clear();
+                window.clear();
+                probation.clear();
+                protect.clear();
+                weight = 0;
+                for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                    readBuffer.set(i, null);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private AccessQueue queueOf(final Node node) {
+            switch (node.queue) {
+                case WINDOW:
+                    return window;
+                case PROBATION:
+                    return probation;
+                default:
+                    return protect;
+            }
+        }
+
+        private void unlink(final Node node) {
+            map.remove(node.key);
+            queueOf(node).unlink(node);
+            node.queue = DEAD;
+            weight -= node.value.weight;
+            listener.onRemoved(node.value);
+        }
+
+        /**
+         * Move the window overflow to probation, then evict until the segment fits, each
+         * time keeping the more popular of the newest candidate and the eldest victim.
+         */
+        private void evict() {
+            while (window.weight > maxWindowWeight && window.head != null) {
+                Node node = window.head;
+                window.unlink(node);
+                node.queue = PROBATION;
+                probation.add(node);
+            }
+            while (weight > maxWeight) {
+                Node victim = probation.head;
+                Node candidate = probation.tail;
+                if (victim == null) {
+                    victim = protect.head != null ? protect.head : window.head;
+                    if (victim == null) return;
+                    unlink(victim);
+                } else if (victim == candidate
+                        || sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) {
+                    unlink(victim);
+                } else {
+                    unlink(candidate);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.jeff.jframework.tools.cache;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Estimates the memory a cached value retains, for the byte budget of a weighed
+ * {@link LruMemoryCache}.
+ * <p>
+ * The weight is taken once when the value is put, a value must not grow in cache.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+public interface Weigher {
+
+    /**
+     * Return the weight of the entry.
+     *
+     * @param key   The key of cache.
+     * @param value The value of cache.
+     * @return the weight of the entry, in bytes
+     */
+    int weigh(@NonNull String key, @NonNull Object value);
+}
@@ -0,0 +1,193 @@
+package com.jeff.jframework.tools.cache;
+
+import android.util.Log;
+
+import com.jeff.jframework.tools.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Write-behind queue of {@link LruDiskCache} puts.
+ * <p>
+ * A put only records the pending value and queues its key, a dedicated writer thread
+ * writes it later. Puts to a key which is still pending replace the pending value without
+ * queueing the key again, so a burst of puts to the same key costs a single write. The
+ * queue is bounded, a put blocks while it is full.
+ * <p>
+ * Reads must consult {@link #get(String)} first, pending values are not on disk yet.
+ *
+ * @author Jeff
+ * @date 2026/10/18
+ *
+ * <a href="mailto:feijeff0486@gmail.com">Contact me</a>
+ * <a href="https://github.com/feijeff0486">Follow me</a>
+ */
+final class WriteBehindQueue {
+    private static final String TAG = "WriteBehindQueue";
+
+    interface Sink {
+        /**
+         * Write the value, called on the writer thread or in {@link #flush()}.
+         */
+        void write(String key, byte[] value, long expiry);
+    }
+
+    private final Sink sink;
+    private final ConcurrentHashMap<String, Pending> pending = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> keys;
+    private final ExecutorService writer;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    /**
+     * Held while writing, so a remove or clear never races with the write of an older value.
+     */
+    private final Object writeLock = new Object();
+
+    WriteBehindQueue(final Sink sink, final int capacity) {
+        this.sink = sink;
+        keys = new LinkedBlockingQueue<>(capacity);
+        writer = new ThreadPoolExecutor(0, 1,
+                60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                ThreadUtils.createThreadFactory("lruDiskWriter", Thread.NORM_PRIORITY - 1));
+    }
+
+    /**
+     * Queue the value, replacing the pending value of the key, if any.
+     *
+     * @param expiry The expiry of the value, see {@link DiskCacheHelper#expiryOf(int)}.
+     */
+    void put(final String key, final byte[] value, final long expiry) {
+        if (pending.put(key, new Pending(value, expiry)) != null) return;
+        try {
+            keys.put(key);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // can't wait for room, write it on the caller's thread instead
+            writePending(key);
+            return;
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * Return the pending value of the key.
+     *
+     * @return the pending value or null if nothing is pending
+     */
+    Pending get(final String key) {
+        return pending.get(key);
+    }
+
+    /**
+     * Drop the pending value of the key, waiting for a write of it in progress.
+     */
+    void discard(final String key) {
+        synchronized (writeLock) {
+            pending.remove(key);
+        }
+        signalIfIdle();
+    }
+
+    /**
+     * Drop every pending value, waiting for a write in progress.
+     */
+    void discardAll() {
+        synchronized (writeLock) {
+            keys.clear();
+            pending.clear();
+        }
+        signalIfIdle();
+    }
+
+    /**
+     * Write every pending value on the caller's thread, waiting for a write of it in progress
+     * on the writer thread.
+     */
+    void flush() {
+        String key;
+        while ((key = keys.poll()) != null) {
+            writePending(key);
+        }
+        // the writer may have taken a key off the queue but not written it yet
+        for (String pendingKey : new ArrayList<>(pending.keySet())) {
+            writePending(pendingKey);
+        }
+    }
+
+    /**
+     * Wait until every queued value has been written.
+     *
+     * @return {@code true}: quiescent<br>{@code false}: timed out
+     */
+    boolean awaitQuiescence(final long timeout, final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (pending) {
+            while (!pending.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(pending, remaining);
+            }
+        }
+        synchronized (writeLock) {
+            return true;
+        }
+    }
+
+    private void scheduleDrain() {
+        if (!draining.compareAndSet(false, true)) return;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                do {
+                    String key;
+                    while ((key = keys.poll()) != null) {
+                        writePending(key);
+                    }
+                    draining.set(false);
+                    // a key queued after the last poll but before the reset needs this pass
+                } while (!keys.isEmpty() && draining.compareAndSet(false, true));
+            }
+        });
+    }
+
+    private void writePending(final String key) {
+        while (true) {
+            synchronized (writeLock) {
+                Pending value = pending.get(key);
+                if (value == null) break;
+                try {
+                    sink.write(key, value.value, value.expiry);
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "write " + key + " failed: " + e.getMessage());
+                }
+                // a put during the write replaced the value without queueing the key again
+                if (pending.remove(key, value)) break;
+            }
+        }
+        signalIfIdle();
+    }
+
+    private void signalIfIdle() {
+        if (!pending.isEmpty()) return;
+        synchronized (pending) {
+            pending.notifyAll();
+        }
+    }
+
+    static final class Pending {
+        final byte[] value;
+        final long expiry;
+
+        Pending(final byte[] value, final long expiry) {
+            this.value = value;
+            this.expiry = expiry;
+        }
+    }
+}